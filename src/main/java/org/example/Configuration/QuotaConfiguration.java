@@ -0,0 +1,27 @@
+package org.example.Configuration;
+
+import org.example.service.ApiQuotaLimiter;
+
+/**
+ * IoTDA接口配额配置
+ * 使用进程内共享的限流器，各服务的IoTDA调用共用同一组地域令牌桶
+ */
+@Configuration
+public class QuotaConfiguration {
+
+    @Bean
+    public ApiQuotaLimiter apiQuotaLimiter(
+            @Value("${iotda.quota.command.rate:50}") double commandRate,
+            @Value("${iotda.quota.command.burst:100}") int commandBurst,
+            @Value("${iotda.quota.command.reserved:20}") int commandReserved,
+            @Value("${iotda.quota.query.rate:100}") double queryRate,
+            @Value("${iotda.quota.query.burst:200}") int queryBurst,
+            @Value("${iotda.quota.query.reserved:20}") int queryReserved) {
+        ApiQuotaLimiter limiter = ApiQuotaLimiter.shared();
+
+        // reserved为只留给交互式请求的令牌数，后台批量请求打满配额时单条命令仍可立即发出
+        limiter.configure(ApiQuotaLimiter.ApiClass.COMMAND, commandRate, commandBurst, commandReserved);
+        limiter.configure(ApiQuotaLimiter.ApiClass.QUERY, queryRate, queryBurst, queryReserved);
+        return limiter;
+    }
+}
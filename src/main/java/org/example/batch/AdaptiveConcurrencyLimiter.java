@@ -0,0 +1,153 @@
+package org.example.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD自适应并发控制
+ * 请求成功且延迟正常时并发上限加性增长（每完成一个窗口的请求约+1），
+ * 遇到限流（429）、服务端错误（5xx）或延迟明显升高时乘性下降，
+ * 使每次运行都能逼近接口可持续承受的最大速率
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    // 延迟EWMA平滑系数
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private double smoothedLatencyNanos;
+    private long minLatencyNanos = Long.MAX_VALUE;
+    // 一次下调后，在这之前发出的请求结果不再触发下调，避免同一波限流把上限连续砍到底
+    private long lastDecreaseNanos;
+
+    /**
+     * @param initialLimit 初始并发上限
+     * @param minLimit 并发上限下界
+     * @param maxLimit 并发上限上界
+     * @param backoffRatio 下调时的乘数，例如0.5
+     * @param latencyTolerance 平滑延迟超过最小延迟的多少倍视为过载
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, double latencyTolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+        // nanoTime的原点任意，可能为负，不能以0作为“从未下调”
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /**
+     * 获取一个执行许可，在途请求达到当前上限时阻塞
+     * @return 请求开始时间，完成时传回onSuccess/onFailure
+     */
+    public long acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                permitAvailable.await();
+            }
+            inFlight++;
+            return System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求成功
+     */
+    public void onSuccess(long startNanos) {
+        long latency = System.nanoTime() - startNanos;
+        lock.lock();
+        try {
+            inFlight--;
+            recordLatency(latency);
+
+            if (smoothedLatencyNanos > minLatencyNanos * latencyTolerance) {
+                decrease(startNanos, "延迟升高");
+            } else if (limit < maxLimit) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求失败
+     * @param overloaded 是否为限流或服务端过载类错误
+     */
+    public void onFailure(long startNanos, boolean overloaded) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (overloaded) {
+                decrease(startNanos, "限流或服务端错误");
+            }
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordLatency(long latency) {
+        minLatencyNanos = Math.min(minLatencyNanos, latency);
+        smoothedLatencyNanos = smoothedLatencyNanos == 0
+                ? latency
+                : smoothedLatencyNanos + LATENCY_SMOOTHING * (latency - smoothedLatencyNanos);
+    }
+
+    private void decrease(long startNanos, String reason) {
+        // 按差值比较，nanoTime溢出时仍然正确
+        if (startNanos - lastDecreaseNanos < 0) {
+            return;
+        }
+        double previous = limit;
+        limit = Math.max(minLimit, limit * backoffRatio);
+        lastDecreaseNanos = System.nanoTime();
+        // 下调后重置延迟基线，避免旧的高延迟样本持续触发下调
+        smoothedLatencyNanos = 0;
+        logger.info("并发上限下调（{}）: {} -> {}", reason, (int) previous, (int) limit);
+    }
+
+    /**
+     * 当前并发上限
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前在途请求数
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
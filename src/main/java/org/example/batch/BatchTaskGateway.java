@@ -0,0 +1,109 @@
+package org.example.batch;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * IoTDA批量任务接口抽象
+ * 将文件上传、任务创建、任务状态查询与任务明细分页封装起来，
+ * 便于在没有网络的环境下用本地桩实现替换真实的华为云调用
+ */
+public interface BatchTaskGateway {
+
+    /**
+     * 任务的最终状态
+     */
+    Set<String> TERMINAL_STATUSES = Set.of("Success", "Fail", "PartialSuccess", "Stopped");
+
+    /**
+     * 任务是否已结束
+     */
+    static boolean isTerminalStatus(String status) {
+        return TERMINAL_STATUSES.contains(status);
+    }
+
+    /**
+     * 上传设备注册文件
+     * @param file 本地注册文件
+     * @return 平台返回的文件ID
+     */
+    String uploadFile(Path file);
+
+    /**
+     * 基于已上传的文件创建批量注册设备任务
+     * @param taskName 任务名称
+     * @param fileId 注册文件ID
+     * @return 任务ID
+     */
+    String createDeviceTask(String taskName, String fileId);
+
+    /**
+     * 一次性查询多个任务的状态
+     * @param taskIds 任务ID集合
+     * @return 任务ID -> 任务状态
+     */
+    Map<String, String> listTaskStatuses(Collection<String> taskIds);
+
+    /**
+     * 分页查询任务的子任务（单设备）执行明细
+     * @param taskId 任务ID
+     * @param marker 上一页返回的分页标记，首页传null
+     * @return 明细分页
+     */
+    TaskDetailPage showTaskDetails(String taskId, String marker);
+
+    /**
+     * 任务明细分页
+     */
+    class TaskDetailPage {
+        private final List<DeviceTaskResult> results;
+        private final String nextMarker;
+
+        public TaskDetailPage(List<DeviceTaskResult> results, String nextMarker) {
+            this.results = results;
+            this.nextMarker = nextMarker;
+        }
+
+        public List<DeviceTaskResult> getResults() { return results; }
+
+        /**
+         * 下一页分页标记，为null表示已经是最后一页
+         */
+        public String getNextMarker() { return nextMarker; }
+    }
+
+    /**
+     * 单个设备的任务执行结果
+     * 注册任务：nodeId为子任务目标，deviceId为平台分配的设备ID；
+     * 命令任务：deviceId为子任务目标，commandId为平台生成的命令ID，nodeId为null
+     */
+    class DeviceTaskResult {
+        private final String nodeId;
+        private final boolean success;
+        private final String deviceId;
+        private final String errorMessage;
+        private final String commandId;
+
+        public DeviceTaskResult(String nodeId, boolean success, String deviceId, String errorMessage) {
+            this(nodeId, success, deviceId, errorMessage, null);
+        }
+
+        public DeviceTaskResult(String nodeId, boolean success, String deviceId, String errorMessage,
+                                String commandId) {
+            this.nodeId = nodeId;
+            this.success = success;
+            this.deviceId = deviceId;
+            this.errorMessage = errorMessage;
+            this.commandId = commandId;
+        }
+
+        public String getNodeId() { return nodeId; }
+        public boolean isSuccess() { return success; }
+        public String getDeviceId() { return deviceId; }
+        public String getErrorMessage() { return errorMessage; }
+        public String getCommandId() { return commandId; }
+    }
+}
@@ -0,0 +1,214 @@
+package org.example.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * 基于IoTDA批量任务的设备注册
+ * 将设备信息写入注册文件并通过批量任务提交，替代逐个调用createDevice，
+ * 然后统一轮询任务状态并按设备对账。
+ * 注册文件中含有设备密钥明文，上传后（包括上传失败时）立即删除，不留在工作目录中
+ */
+public class BatchTaskProvisioner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchTaskProvisioner.class);
+
+    // 注册文件列头，与控制台“批量注册设备”模板保持一致
+    static final String REGISTRATION_FILE_HEADER = "node_id,device_name,product_id,secret,description";
+
+    private final BatchTaskGateway gateway;
+    private final String productId;
+    private final IntFunction<String> secretGenerator;
+    private final Path workDir;
+    private final int devicesPerTask;
+    private final long pollIntervalMillis;
+    private final long timeoutMillis;
+
+    /**
+     * @param secretGenerator 按设备序号生成设备密钥
+     */
+    public BatchTaskProvisioner(BatchTaskGateway gateway, String productId, IntFunction<String> secretGenerator,
+                                Path workDir, int devicesPerTask, long pollIntervalMillis, long timeoutMillis) {
+        this.gateway = gateway;
+        this.productId = productId;
+        this.secretGenerator = secretGenerator;
+        this.workDir = workDir;
+        this.devicesPerTask = devicesPerTask;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 批量注册序号在[startIndex, endIndex]范围内的设备
+     * @return 创建成功的设备数量
+     */
+    public int provision(int startIndex, int endIndex, ProvisioningListener listener) throws IOException {
+        return provision(startIndex, endIndex, index -> false, listener);
+    }
+
+    /**
+     * 批量注册序号在[startIndex, endIndex]范围内、且未被skip排除的设备
+     * @param skip 返回true的序号不再注册（例如续跑时已创建的设备）
+     * @return 创建成功的设备数量
+     */
+    public int provision(int startIndex, int endIndex, IntPredicate skip,
+                         ProvisioningListener listener) throws IOException {
+        Files.createDirectories(workDir);
+
+        // 1. 生成注册文件并提交批量任务
+        Map<String, Map<String, PendingDevice>> pendingByTask = new LinkedHashMap<>();
+        for (int from = startIndex; from <= endIndex; from += devicesPerTask) {
+            int to = Math.min(from + devicesPerTask - 1, endIndex);
+            Map<String, PendingDevice> pending = new HashMap<>();
+            Path file = writeRegistrationFile(from, to, skip, pending);
+            String fileId;
+            try {
+                if (pending.isEmpty()) {
+                    continue;
+                }
+                fileId = gateway.uploadFile(file);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+            String taskId = gateway.createDeviceTask(
+                    String.format("watermeter_%d_%d", from, to), fileId);
+            pendingByTask.put(taskId, pending);
+
+            logger.info("批量注册任务已提交，任务ID: {}，设备序号: {}-{}", taskId, from, to);
+        }
+
+        // 2. 统一轮询所有任务状态，完成一个对账一个
+        int created = 0;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!pendingByTask.isEmpty()) {
+            Map<String, String> statuses = gateway.listTaskStatuses(pendingByTask.keySet());
+            for (Map.Entry<String, String> entry : statuses.entrySet()) {
+                if (BatchTaskGateway.isTerminalStatus(entry.getValue())) {
+                    logger.info("批量任务{}已结束，状态: {}", entry.getKey(), entry.getValue());
+                    created += reconcile(entry.getKey(), pendingByTask.remove(entry.getKey()), listener);
+                }
+            }
+
+            if (pendingByTask.isEmpty()) {
+                break;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                logger.error("等待批量任务超时，仍有{}个任务未结束: {}", pendingByTask.size(), pendingByTask.keySet());
+                pendingByTask.values().forEach(pending -> pending.forEach((nodeId, device) ->
+                        listener.onDeviceFailed(device.index, nodeId, "批量任务等待超时")));
+                break;
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(pollIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待批量任务时被中断", e);
+            }
+        }
+
+        return created;
+    }
+
+    /**
+     * 写入一个注册文件，同时记录每个节点的待对账信息
+     */
+    private Path writeRegistrationFile(int from, int to, IntPredicate skip,
+                                       Map<String, PendingDevice> pending) throws IOException {
+        Path file = workDir.resolve(String.format("watermeter_register_%d_%d.csv", from, to));
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(REGISTRATION_FILE_HEADER);
+            writer.newLine();
+
+            for (int index = from; index <= to; index++) {
+                if (skip.test(index)) {
+                    continue;
+                }
+                String nodeId = BatchWaterMeterCreator.nodeIdOf(index);
+                String deviceName = BatchWaterMeterCreator.deviceNameOf(index);
+                String secret = secretGenerator.apply(index);
+
+                writer.write(nodeId);
+                writer.write(',');
+                writer.write(deviceName);
+                writer.write(',');
+                writer.write(productId);
+                writer.write(',');
+                writer.write(secret);
+                writer.write(',');
+                writer.write(BatchWaterMeterCreator.descriptionOf(index));
+                writer.newLine();
+
+                pending.put(nodeId, new PendingDevice(index, deviceName, secret));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * 分页读取任务明细，逐个设备对账
+     */
+    private int reconcile(String taskId, Map<String, PendingDevice> pending, ProvisioningListener listener) {
+        int created = 0;
+        String marker = null;
+        do {
+            BatchTaskGateway.TaskDetailPage page = gateway.showTaskDetails(taskId, marker);
+            for (BatchTaskGateway.DeviceTaskResult result : page.getResults()) {
+                PendingDevice device = pending.remove(result.getNodeId());
+                if (device == null) {
+                    logger.warn("任务{}返回了未知节点: {}", taskId, result.getNodeId());
+                    continue;
+                }
+
+                if (result.isSuccess()) {
+                    BatchWaterMeterCreator.WaterMeterDevice waterMeter = new BatchWaterMeterCreator.WaterMeterDevice();
+                    waterMeter.setIndex(device.index);
+                    waterMeter.setDeviceId(result.getDeviceId());
+                    waterMeter.setDeviceName(device.deviceName);
+                    waterMeter.setNodeId(result.getNodeId());
+                    waterMeter.setSecret(device.secret);
+                    waterMeter.setProductId(productId);
+                    listener.onDeviceCreated(waterMeter);
+                    created++;
+                } else {
+                    listener.onDeviceFailed(device.index, result.getNodeId(), result.getErrorMessage());
+                }
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+
+        // 明细中没有出现的设备视为失败
+        pending.forEach((nodeId, device) ->
+                listener.onDeviceFailed(device.index, nodeId, "任务明细中未找到该设备"));
+
+        return created;
+    }
+
+    /**
+     * 已写入注册文件、等待对账的设备
+     */
+    private static class PendingDevice {
+        private final int index;
+        private final String deviceName;
+        private final String secret;
+
+        PendingDevice(int index, String deviceName, String secret) {
+            this.index = index;
+            this.deviceName = deviceName;
+            this.secret = secret;
+        }
+    }
+}
@@ -1,55 +1,82 @@
 package org.example.batch;
 
 import com.huaweicloud.sdk.core.auth.BasicCredentials;
-import com.huaweicloud.sdk.core.auth.ICredential;
+import com.huaweicloud.sdk.core.ClientBuilder;
 import com.huaweicloud.sdk.core.exception.ConnectionException;
 import com.huaweicloud.sdk.core.exception.RequestTimeoutException;
 import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+import com.huaweicloud.sdk.iotda.v5.IoTDAAsyncClient;
 import com.huaweicloud.sdk.iotda.v5.IoTDAClient;
 import com.huaweicloud.sdk.iotda.v5.model.*;
 import com.huaweicloud.sdk.iotda.v5.region.IoTDARegion;
+import org.example.service.ApiQuotaExceededException;
+import org.example.service.ApiQuotaLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 批量创建华为云IoTDA水表设备（修正版）
  * 适配华为云IoTDA SDK的实际API结构
  */
-public class FixedBatchWaterMeterCreator {
+public class BatchWaterMeterCreator {
 
-    private static final Logger logger = LoggerFactory.getLogger(FixedBatchWaterMeterCreator.class);
+    private static final Logger logger = LoggerFactory.getLogger(BatchWaterMeterCreator.class);
 
-    // 配置信息
-    private static final String ACCESS_KEY = "your-access-key";  // 替换为你的AK
-    private static final String SECRET_KEY = "your-secret-key";  // 替换为你的SK
-    private static final String REGION = "cn-north-4";          // 区域
-    private static final int TOTAL_DEVICES = 500;               // 总设备数
-    private static final int BATCH_SIZE = 50;                   // 每批次创建数量
-    private static final int THREAD_POOL_SIZE = 10;             // 线程池大小
+    private static final int REPORT_FLUSH_SIZE = 500;          // 批量任务模式下每500个设备写一次报告
 
     // 水表产品相关配置
     private static final String PRODUCT_NAME = "OpenHarmony智能水表";
     private static final String DEVICE_TYPE = "WaterMeter";
     private static final String PROTOCOL_TYPE = "MQTT";
 
+    private final ProvisioningConfig config;
+    private final DeviceSecretGenerator secretGenerator;
+    // 与同进程内其他IoTDA调用共用的地域配额
+    private final ApiQuotaLimiter quotaLimiter = ApiQuotaLimiter.shared();
     private IoTDAClient client;
+    private IoTDAAsyncClient asyncClient;
+    private ProductCatalog productCatalog;
     private String productId;
-    private List<WaterMeterDevice> createdDevices = new ArrayList<>();
+    private ProvisioningJournal journal;
+    private DeviceReportWriter reportWriter;
+    private FailureReportWriter failureWriter;
+    private final LongAdder createdCount = new LongAdder();
+    // createDevice请求超时的设备序号：服务端可能已创建成功，重试遇到409时按节点ID查回设备
+    private final Set<Integer> timedOutCreates = ConcurrentHashMap.newKeySet();
+
+    public BatchWaterMeterCreator(ProvisioningConfig config) {
+        this.config = config;
+        this.secretGenerator = "derived".equals(config.getSecretMode())
+                ? DeviceSecretGenerator.derived(config.getSecretMasterKey())
+                : DeviceSecretGenerator.random();
+    }
 
+    /**
+     * 启动参数示例：--total.devices=200000 --thread.pool.size=32 --config=provision.properties
+     * 批量删除示例：--operation=delete --input.file=water_meter_devices_20240101_120000.csv
+     * 配置项见 {@link ProvisioningConfig}
+     */
     public static void main(String[] args) {
-        FixedBatchWaterMeterCreator creator = new FixedBatchWaterMeterCreator();
+        BatchWaterMeterCreator creator;
+        try {
+            creator = new BatchWaterMeterCreator(ProvisioningConfig.load(args));
+        } catch (Exception e) {
+            logger.error("加载配置失败", e);
+            return;
+        }
+
         try {
             creator.initialize();
             creator.createWaterMeterDevices();
@@ -64,20 +91,56 @@ public class FixedBatchWaterMeterCreator {
     /**
      * 初始化IoTDA客户端
      */
-    private void initialize() {
+    private void initialize() throws IOException {
         logger.info("初始化华为云IoTDA客户端...");
 
-        ICredential auth = new BasicCredentials()
-                .withAk(ACCESS_KEY)
-                .withSk(SECRET_KEY);
+        BasicCredentials auth = new BasicCredentials()
+                .withAk(config.getAccessKey())
+                .withSk(config.getSecretKey());
+
+        // 配置了endpoint时直连该地址（例如本地IoTDA模拟服务），不再按region解析
+        String endpoint = config.getEndpoint();
+        if (endpoint != null) {
+            auth.withProjectId(config.getProjectId());
+            logger.info("使用自定义endpoint: {}", endpoint);
+        }
 
-        this.client = IoTDAClient.newBuilder()
-                .withCredential(auth)
-                .withRegion(IoTDARegion.valueOf(REGION))
-                .build();
+        quotaLimiter.configure(ApiQuotaLimiter.ApiClass.PROVISIONING,
+                config.getProvisioningQuotaRate(), config.getProvisioningQuotaBurst(), 0);
 
-        // 创建或获取水表产品
-        this.productId = createOrGetWaterMeterProduct();
+        ClientBuilder<IoTDAClient> builder = IoTDAClient.newBuilder().withCredential(auth);
+        this.client = (endpoint != null
+                ? builder.withEndpoint(endpoint)
+                : builder.withRegion(IoTDARegion.valueOf(config.getRegion()))).build();
+
+        // 异步模式使用异步客户端发起createDevice请求
+        if ("async".equals(config.getMode())) {
+            ClientBuilder<IoTDAAsyncClient> asyncBuilder = IoTDAAsyncClient.newBuilder().withCredential(auth);
+            this.asyncClient = (endpoint != null
+                    ? asyncBuilder.withEndpoint(endpoint)
+                    : asyncBuilder.withRegion(IoTDARegion.valueOf(config.getRegion()))).build();
+        }
+
+        // 创建或获取水表产品，批量删除、更新不需要产品
+        if (isCreate()) {
+            this.productCatalog = new ProductCatalog(client,
+                    Paths.get(config.getProductCacheFile()), config.getProductCacheTtlMillis(),
+                    config.getApiEnvironment());
+            this.productId = createOrGetWaterMeterProduct();
+        }
+
+        // 打开操作日志，续跑模式下加载已完成的设备
+        this.journal = ProvisioningJournal.open(
+                Paths.get(config.getJournalFile()), config.isResume(), config.getJournalSyncEvery());
+        if (config.isResume()) {
+            logger.info("续跑模式，已完成{}个设备将被跳过", journal.completedCount());
+        }
+
+        // 报告文件在处理过程中流式写入
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        String suffix = isCreate() ? timestamp : config.getOperation() + "_" + timestamp;
+        this.reportWriter = new DeviceReportWriter(Paths.get(String.format("water_meter_devices_%s.csv", suffix)));
+        this.failureWriter = new FailureReportWriter(Paths.get(String.format("water_meter_failures_%s.csv", suffix)));
 
         logger.info("初始化完成，产品ID: {}", productId);
     }
@@ -133,6 +196,7 @@ public class FixedBatchWaterMeterCreator {
             }
 
             CreateProductResponse response = client.createProduct(request);
+            productCatalog.invalidate();
             logger.info("水表产品创建成功，产品ID: {}", response.getProductId());
             return response.getProductId();
 
@@ -179,22 +243,18 @@ public class FixedBatchWaterMeterCreator {
 
     /**
      * 查找现有的水表产品
+     * 依次按产品名称、设备类型精确匹配，最后查找名称包含“水表”的产品
      */
     private String findExistingProduct() {
         try {
-            ListProductsRequest request = new ListProductsRequest();
-            request.withLimit(100);
-
-            ListProductsResponse response = client.listProducts(request);
-            if (response.getProducts() != null) {
-                for (ProductSummary product : response.getProducts()) {
-                    if (PRODUCT_NAME.equals(product.getName()) ||
-                            (product.getName() != null && product.getName().contains("水表")) ||
-                            DEVICE_TYPE.equals(product.getDeviceType())) {
-                        return product.getProductId();
-                    }
-                }
+            String existing = productCatalog.findByName(PRODUCT_NAME);
+            if (existing == null) {
+                existing = productCatalog.findByDeviceType(DEVICE_TYPE);
             }
+            if (existing == null) {
+                existing = productCatalog.findFirstByName(name -> name.contains("水表"));
+            }
+            return existing;
         } catch (Exception e) {
             logger.warn("查找现有产品失败: {}", e.getMessage());
         }
@@ -206,15 +266,7 @@ public class FixedBatchWaterMeterCreator {
      */
     private String findAnyAvailableProduct() {
         try {
-            ListProductsRequest request = new ListProductsRequest();
-            request.withLimit(10);
-
-            ListProductsResponse response = client.listProducts(request);
-            if (response.getProducts() != null && !response.getProducts().isEmpty()) {
-                ProductSummary firstProduct = response.getProducts().get(0);
-                logger.info("使用现有产品: {} (ID: {})", firstProduct.getName(), firstProduct.getProductId());
-                return firstProduct.getProductId();
-            }
+            return productCatalog.findAny();
         } catch (Exception e) {
             logger.warn("查找可用产品失败: {}", e.getMessage());
         }
@@ -225,116 +277,170 @@ public class FixedBatchWaterMeterCreator {
      * 批量创建水表设备
      */
     private void createWaterMeterDevices() {
+        if (!isCreate()) {
+            runBulkOperation();
+            return;
+        }
+
         if (productId == null) {
             logger.error("产品ID为空，无法创建设备");
             return;
         }
 
-        logger.info("开始批量创建{}个水表设备，使用产品ID: {}", TOTAL_DEVICES, productId);
-
-        ExecutorService executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        if ("batch-task".equals(config.getMode())) {
+            createWaterMeterDevicesByBatchTask();
+            return;
+        }
 
-        // 分批创建设备
-        for (int batch = 0; batch < (TOTAL_DEVICES + BATCH_SIZE - 1) / BATCH_SIZE; batch++) {
-            final int batchNumber = batch;
-            final int startIndex = batch * BATCH_SIZE;
-            final int endIndex = Math.min(startIndex + BATCH_SIZE, TOTAL_DEVICES);
+        logger.info("开始批量创建{}个水表设备，使用产品ID: {}", config.getTotalDevices(), productId);
 
-            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                createDeviceBatch(batchNumber + 1, startIndex, endIndex);
-            }, executor);
+        ProvisioningEngine engine = newEngine();
+        try {
+            if ("async".equals(config.getMode())) {
+                createdCount.add(engine.runAsync(this::createSingleWaterMeterAsync));
+            } else {
+                createdCount.add(engine.run(this::createSingleWaterMeter));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("等待批次完成时被中断", e);
+        }
+    }
 
-            futures.add(future);
+    /**
+     * 对输入文件中的设备执行批量删除或更新
+     * 输入文件逐行读取，与创建共用批次调度、并发控制、重试和日志
+     */
+    private void runBulkOperation() {
+        String operation = config.getOperation();
+        String inputFile = config.getInputFile();
+        if (inputFile == null) {
+            logger.error("批量{}需要通过input.file指定设备报告或创建日志", operation);
+            return;
         }
 
-        // 等待所有批次完成
-        try {
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
-        } catch (Exception e) {
-            logger.error("等待批次完成时出错", e);
+        // 重置的密钥总是随机生成并写入报告，派生模式下同一序号只能得到原来的密钥
+        BulkDeviceOperations operations = new BulkDeviceOperations(client, config.getUpdateDescription(),
+                config.isUpdateRegenerateSecret(), DeviceSecretGenerator.random()::secretFor,
+                quotaLimiter, config.getRegion());
+        ProvisioningEngine.DeviceOperation deviceOperation;
+        if ("delete".equals(operation)) {
+            deviceOperation = operations::delete;
+        } else if ("update".equals(operation)) {
+            deviceOperation = operations::update;
+        } else {
+            logger.error("不支持的操作: {}，可选值为create、delete、update", operation);
+            return;
+        }
+        if (!"single".equals(config.getMode())) {
+            logger.warn("批量{}只支持single模式，忽略mode={}", operation, config.getMode());
         }
 
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
-            }
+        logger.info("开始批量{}设备，输入文件: {}", operation, inputFile);
+        try (DeviceRecordReader reader = new DeviceRecordReader(Paths.get(inputFile))) {
+            createdCount.add(newEngine().runOperation(reader, deviceOperation));
+        } catch (IOException e) {
+            logger.error("读取输入文件失败: {}", inputFile, e);
         } catch (InterruptedException e) {
-            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            logger.error("等待批次完成时被中断", e);
         }
+    }
 
-        logger.info("设备创建完成，成功创建{}个设备", createdDevices.size());
+    private ProvisioningEngine newEngine() {
+        return new ProvisioningEngine(config, journal, reportWriter, failureWriter,
+                new ProvisioningEngine.ErrorClassifier() {
+                    @Override
+                    public boolean isOverload(Throwable error) {
+                        return isOverloadError(error);
+                    }
+
+                    @Override
+                    public boolean isRetryable(Throwable error) {
+                        return isRetryableError(error);
+                    }
+                });
+    }
+
+    private boolean isCreate() {
+        return "create".equals(config.getOperation());
     }
 
     /**
-     * 创建一批设备
+     * 通过IoTDA批量任务创建水表设备
      */
-    private void createDeviceBatch(int batchNumber, int startIndex, int endIndex) {
-        logger.info("开始创建第{}批设备，索引范围: {}-{}", batchNumber, startIndex, endIndex - 1);
+    private void createWaterMeterDevicesByBatchTask() {
+        logger.info("开始通过批量任务创建{}个水表设备，使用产品ID: {}", config.getTotalDevices(), productId);
 
-        for (int i = startIndex; i < endIndex; i++) {
-            try {
-                WaterMeterDevice device = createSingleWaterMeter(i + 1);
-                synchronized (createdDevices) {
-                    createdDevices.add(device);
-                }
+        BatchTaskProvisioner provisioner = new BatchTaskProvisioner(
+                new IoTDABatchTaskGateway(client), productId, secretGenerator::secretFor,
+                Paths.get("batch_tasks"), config.getDevicesPerTask(),
+                config.getTaskPollIntervalMillis(), config.getTaskTimeoutMillis());
+        int startIndex = config.getStartIndex();
+        int endIndex = startIndex + config.getTotalDevices() - 1;
 
-                if (i % 10 == 0) {
-                    logger.info("已创建{}个设备", i + 1);
+        List<WaterMeterDevice> pendingRows = new ArrayList<>(REPORT_FLUSH_SIZE);
+        try {
+            provisioner.provision(startIndex, endIndex, journal::isCompleted, new ProvisioningListener() {
+                @Override
+                public void onDeviceCreated(WaterMeterDevice device) {
+                    createdCount.increment();
+                    device.setSecret(storedSecret(device.getSecret()));
+                    pendingRows.add(device);
+                    try {
+                        journal.append(device);
+                        if (pendingRows.size() >= REPORT_FLUSH_SIZE) {
+                            reportWriter.writeBatch(pendingRows);
+                            pendingRows.clear();
+                        }
+                    } catch (IOException e) {
+                        logger.error("写入创建日志或报告失败，设备{}: {}", device.getIndex(), e.getMessage());
+                    }
                 }
 
-                // 避免请求过于频繁
-                Thread.sleep(200);
-
-            } catch (Exception e) {
-                logger.error("创建设备{}失败: {}", i + 1, e.getMessage());
-            }
+                @Override
+                public void onDeviceFailed(int index, String nodeId, String reason) {
+                    logger.error("批量任务创建设备{}失败: {}", index, reason);
+                    // 与逐个创建一致写入失败报告，批量任务只尝试一次
+                    try {
+                        failureWriter.write(index, 1, reason);
+                    } catch (IOException e) {
+                        logger.error("写入失败报告出错，设备{}", index, e);
+                    }
+                }
+            });
+            reportWriter.writeBatch(pendingRows);
+        } catch (IOException e) {
+            logger.error("生成设备注册文件或写入报告失败", e);
         }
 
-        logger.info("第{}批设备创建完成", batchNumber);
+        logger.info("批量任务创建完成，成功创建{}个设备", createdCount.sum());
     }
 
     /**
      * 创建单个水表设备
      */
     private WaterMeterDevice createSingleWaterMeter(int index) {
+        // 配额等待超时抛出ApiQuotaExceededException，由引擎按可重试错误处理
+        quotaLimiter.acquire(config.getRegion(), ApiQuotaLimiter.ApiClass.PROVISIONING,
+                ApiQuotaLimiter.Priority.BACKGROUND);
+        String secret = secretGenerator.secretFor(index);
         try {
-            CreateDeviceRequest request = new CreateDeviceRequest();
-            CreateDevice body = new CreateDevice();
-
-            // 生成设备信息
-            String deviceName = String.format("OpenHarmony-WaterMeter-%04d", index);
-            String nodeId = String.format("watermeter_%04d", index);
-            String secret = generateDeviceSecret();
-
-            body.withProductId(productId)
-                    .withNodeId(nodeId)
-                    .withDeviceName(deviceName)
-                    .withSecret(secret)
-                    .withDescription(String.format("OpenHarmony智能水表设备 #%d", index));
-
-            request.withBody(body);
-
-            CreateDeviceResponse response = client.createDevice(request);
-
-            WaterMeterDevice device = new WaterMeterDevice();
-            device.setDeviceId(response.getDeviceId());
-            device.setDeviceName(deviceName);
-            device.setNodeId(nodeId);
-            device.setSecret(secret);
-            device.setIndex(index);
-            device.setProductId(productId);
-
-            logger.debug("创建水表设备成功: {} (ID: {})", deviceName, response.getDeviceId());
-
-            return device;
+            CreateDeviceResponse response = client.createDevice(buildCreateDeviceRequest(index, secret));
+            timedOutCreates.remove(index);
+            return toWaterMeterDevice(index, secret, response.getDeviceId());
 
         } catch (ConnectionException | RequestTimeoutException e) {
-            logger.error("网络连接错误，设备{}: {}", index, e.getMessage());
+            if (e instanceof RequestTimeoutException) {
+                timedOutCreates.add(index);
+            }
+            logger.warn("网络连接错误，设备{}: {}", index, e.getMessage());
             throw new RuntimeException("网络连接失败", e);
         } catch (ServiceResponseException e) {
-            logger.error("服务响应错误，设备{}: {} - {}", index, e.getHttpStatusCode(), e.getErrorMsg());
+            if (isCreatedByTimedOutAttempt(index, e)) {
+                return adoptExistingDevice(index, secret);
+            }
+            logger.warn("服务响应错误，设备{}: {} - {}", index, e.getHttpStatusCode(), e.getErrorMsg());
             throw new RuntimeException("服务响应失败", e);
         } catch (Exception e) {
             logger.error("创建设备{}时出现未知错误", index, e);
@@ -343,39 +449,189 @@ public class FixedBatchWaterMeterCreator {
     }
 
     /**
-     * 生成设备密钥
+     * 异步创建单个水表设备，请求由异步客户端发出；配额也异步获取，等待配额和请求期间都不占用调用线程
      */
-    private String generateDeviceSecret() {
-        return UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+    private CompletableFuture<WaterMeterDevice> createSingleWaterMeterAsync(int index) {
+        String secret = secretGenerator.secretFor(index);
+        return acquireProvisioningAsync()
+                .thenCompose(permit -> asyncClient.createDeviceAsync(buildCreateDeviceRequest(index, secret)))
+                .handle((response, error) -> {
+                    if (error == null) {
+                        timedOutCreates.remove(index);
+                        return CompletableFuture.completedFuture(toWaterMeterDevice(index, secret, response.getDeviceId()));
+                    }
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause instanceof RequestTimeoutException) {
+                        timedOutCreates.add(index);
+                    } else if (cause instanceof ServiceResponseException
+                            && isCreatedByTimedOutAttempt(index, (ServiceResponseException) cause)) {
+                        return adoptExistingDeviceAsync(index, secret);
+                    }
+                    return CompletableFuture.<WaterMeterDevice>failedFuture(cause);
+                })
+                .thenCompose(future -> future);
+    }
+
+    /**
+     * 创建设备返回409且该序号之前的请求超时：设备很可能由超时的那次请求创建
+     */
+    private boolean isCreatedByTimedOutAttempt(int index, ServiceResponseException e) {
+        return e.getHttpStatusCode() == 409 && timedOutCreates.contains(index);
+    }
+
+    /**
+     * 按节点ID查回超时请求创建的设备，作为创建成功记录
+     * 随机密钥模式下超时请求使用的密钥已无法得知，重置为本次生成的密钥，使日志和报告中的密钥有效
+     */
+    private WaterMeterDevice adoptExistingDevice(int index, String secret) {
+        quotaLimiter.acquire(config.getRegion(), ApiQuotaLimiter.ApiClass.PROVISIONING,
+                ApiQuotaLimiter.Priority.BACKGROUND);
+        String deviceId = existingDeviceId(index, client.listDevices(findByNodeIdRequest(index)));
+        if (!secretGenerator.isDerived()) {
+            quotaLimiter.acquire(config.getRegion(), ApiQuotaLimiter.ApiClass.PROVISIONING,
+                    ApiQuotaLimiter.Priority.BACKGROUND);
+            client.resetDeviceSecret(resetSecretRequest(deviceId, secret));
+        }
+        timedOutCreates.remove(index);
+        logger.info("设备{}已由超时的请求创建，按节点ID查回: {}", index, deviceId);
+        return toWaterMeterDevice(index, secret, deviceId);
+    }
+
+    /**
+     * adoptExistingDevice的异步版本
+     */
+    private CompletableFuture<WaterMeterDevice> adoptExistingDeviceAsync(int index, String secret) {
+        return acquireProvisioningAsync()
+                .thenCompose(permit -> asyncClient.listDevicesAsync(findByNodeIdRequest(index)))
+                .thenCompose(response -> {
+                    String deviceId = existingDeviceId(index, response);
+                    if (secretGenerator.isDerived()) {
+                        return CompletableFuture.completedFuture(deviceId);
+                    }
+                    return acquireProvisioningAsync()
+                            .thenCompose(permit -> asyncClient.resetDeviceSecretAsync(resetSecretRequest(deviceId, secret)))
+                            .thenApply(reset -> deviceId);
+                })
+                .thenApply(deviceId -> {
+                    timedOutCreates.remove(index);
+                    logger.info("设备{}已由超时的请求创建，按节点ID查回: {}", index, deviceId);
+                    return toWaterMeterDevice(index, secret, deviceId);
+                });
+    }
+
+    private CompletableFuture<Void> acquireProvisioningAsync() {
+        return quotaLimiter.acquireAsync(config.getRegion(), ApiQuotaLimiter.ApiClass.PROVISIONING,
+                ApiQuotaLimiter.Priority.BACKGROUND);
+    }
+
+    private ListDevicesRequest findByNodeIdRequest(int index) {
+        return new ListDevicesRequest()
+                .withProductId(productId)
+                .withNodeId(nodeIdOf(index))
+                .withLimit(1);
+    }
+
+    private static String existingDeviceId(int index, ListDevicesResponse response) {
+        if (response.getDevices() == null || response.getDevices().isEmpty()) {
+            throw new IllegalStateException("设备" + index + "的节点ID已存在，但按节点ID查询不到设备");
+        }
+        return response.getDevices().get(0).getDeviceId();
+    }
+
+    private static ResetDeviceSecretRequest resetSecretRequest(String deviceId, String secret) {
+        return new ResetDeviceSecretRequest()
+                .withDeviceId(deviceId)
+                .withActionId("resetSecret")
+                .withBody(new ResetDeviceSecret().withSecret(secret));
+    }
+
+    /**
+     * 构建创建设备请求
+     */
+    private CreateDeviceRequest buildCreateDeviceRequest(int index, String secret) {
+        CreateDevice body = new CreateDevice()
+                .withProductId(productId)
+                .withNodeId(nodeIdOf(index))
+                .withDeviceName(deviceNameOf(index))
+                .withSecret(secret)
+                .withDescription(descriptionOf(index));
+
+        return new CreateDeviceRequest().withBody(body);
+    }
+
+    private WaterMeterDevice toWaterMeterDevice(int index, String secret, String deviceId) {
+        WaterMeterDevice device = new WaterMeterDevice();
+        device.setDeviceId(deviceId);
+        device.setDeviceName(deviceNameOf(index));
+        device.setNodeId(nodeIdOf(index));
+        device.setSecret(storedSecret(secret));
+        device.setIndex(index);
+        device.setProductId(productId);
+
+        logger.debug("创建水表设备成功: {} (ID: {})", device.getDeviceName(), deviceId);
+
+        return device;
+    }
+
+    /**
+     * 是否为限流（429）或服务端错误（5xx），用于自适应并发控制
+     */
+    static boolean isOverloadError(Throwable e) {
+        if (e instanceof ServiceResponseException) {
+            int status = ((ServiceResponseException) e).getHttpStatusCode();
+            return status == 429 || status >= 500;
+        }
+        return false;
+    }
+
+    /**
+     * 是否为可重试的错误：网络连接失败、请求超时、客户端配额等待超时、限流或服务端错误
+     * createDevice不是幂等的，超时后重试若返回409，由createSingleWaterMeter按节点ID查回设备
+     */
+    static boolean isRetryableError(Throwable e) {
+        return e instanceof ConnectionException || e instanceof RequestTimeoutException
+                || e instanceof ApiQuotaExceededException || isOverloadError(e);
+    }
+
+    /**
+     * 写入日志和报告的密钥，派生模式下密钥可由序号重新计算，不落盘
+     */
+    private String storedSecret(String secret) {
+        return secretGenerator.isDerived() ? null : secret;
+    }
+
+    /**
+     * 设备名称
+     */
+    static String deviceNameOf(int index) {
+        return String.format("OpenHarmony-WaterMeter-%04d", index);
+    }
+
+    /**
+     * 节点ID
+     */
+    static String nodeIdOf(int index) {
+        return String.format("watermeter_%04d", index);
+    }
+
+    /**
+     * 设备描述
+     */
+    static String descriptionOf(int index) {
+        return String.format("OpenHarmony智能水表设备 #%d", index);
     }
 
     /**
      * 生成设备创建报告
+     * 设备行已在创建过程中写入，这里只负责收尾并打印统计信息
      */
     private void generateReport() {
         try {
-            String fileName = String.format("water_meter_devices_%s.csv",
-                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")));
-
-            try (FileWriter writer = new FileWriter(fileName)) {
-                // 写入CSV头部
-                writer.write("序号,设备名称,设备ID,节点ID,设备密钥,产品ID,创建时间\\n");
-
-                // 写入设备信息
-                for (WaterMeterDevice device : createdDevices) {
-                    writer.write(String.format("%d,%s,%s,%s,%s,%s,%s\\n",
-                            device.getIndex(),
-                            device.getDeviceName(),
-                            device.getDeviceId(),
-                            device.getNodeId(),
-                            device.getSecret(),
-                            device.getProductId(),
-                            LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
-                    ));
-                }
-            }
-
-            logger.info("设备信息已导出到文件: {}", fileName);
+            reportWriter.close();
+            reportWriter = null;
+            failureWriter.close();
+            failureWriter = null;
 
             // 打印统计信息
             printStatistics();
@@ -389,33 +645,80 @@ public class FixedBatchWaterMeterCreator {
      * 打印统计信息
      */
     private void printStatistics() {
-        System.out.println("\\n" + "=".repeat(60));
+        if (!isCreate()) {
+            printOperationStatistics();
+            return;
+        }
+
+        System.out.println("\n" + "=".repeat(60));
         System.out.println("          OpenHarmony 水表设备创建报告");
         System.out.println("=".repeat(60));
-        System.out.println("目标设备数量: " + TOTAL_DEVICES);
-        System.out.println("成功创建数量: " + createdDevices.size());
+        int totalCreated = journal.completedCount();
+        System.out.println("目标设备数量: " + config.getTotalDevices());
+        System.out.println("本次创建数量: " + createdCount.sum());
+        System.out.println("累计创建数量: " + totalCreated);
         System.out.println("创建成功率: " + String.format("%.2f",
-                (double) createdDevices.size() / TOTAL_DEVICES * 100) + "%");
+                (double) totalCreated / config.getTotalDevices() * 100) + "%");
         System.out.println("产品ID: " + productId);
         System.out.println("设备类型: " + DEVICE_TYPE);
         System.out.println("通信协议: " + PROTOCOL_TYPE);
         System.out.println("创建时间: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
         System.out.println("=".repeat(60));
 
-        if (createdDevices.size() < TOTAL_DEVICES) {
-            System.out.println("注意: 有 " + (TOTAL_DEVICES - createdDevices.size()) + " 个设备创建失败，请检查日志");
+        if (totalCreated < config.getTotalDevices()) {
+            System.out.println("注意: 有 " + (config.getTotalDevices() - totalCreated) + " 个设备创建失败，请检查日志，"
+                    + "可使用 -Dprovision.resume=true 续跑");
         } else {
             System.out.println("所有设备创建成功！可以开始进行设备注册联调测试。");
         }
     }
 
+    /**
+     * 打印批量删除、更新的统计信息
+     */
+    private void printOperationStatistics() {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("          OpenHarmony 水表设备批量" + config.getOperation() + "报告");
+        System.out.println("=".repeat(60));
+        System.out.println("输入文件: " + config.getInputFile());
+        System.out.println("本次处理数量: " + createdCount.sum());
+        System.out.println("累计处理数量: " + journal.completedCount());
+        System.out.println("完成时间: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        System.out.println("=".repeat(60));
+        System.out.println("失败的设备见失败报告，可使用 -Dprovision.resume=true 续跑");
+    }
+
     /**
      * 清理资源
      */
     private void cleanup() {
+        if (reportWriter != null) {
+            try {
+                reportWriter.close();
+            } catch (IOException e) {
+                logger.error("关闭报告文件失败", e);
+            }
+        }
+        if (failureWriter != null) {
+            try {
+                failureWriter.close();
+            } catch (IOException e) {
+                logger.error("关闭失败报告失败", e);
+            }
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.error("关闭创建日志失败", e);
+            }
+        }
         if (client != null) {
             client.close();
         }
+        if (asyncClient != null) {
+            asyncClient.close();
+        }
     }
 
     /**
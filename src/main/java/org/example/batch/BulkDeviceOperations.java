@@ -0,0 +1,98 @@
+package org.example.batch;
+
+import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+import com.huaweicloud.sdk.iotda.v5.IoTDAClient;
+import com.huaweicloud.sdk.iotda.v5.model.DeleteDeviceRequest;
+import com.huaweicloud.sdk.iotda.v5.model.ResetDeviceSecret;
+import com.huaweicloud.sdk.iotda.v5.model.ResetDeviceSecretRequest;
+import com.huaweicloud.sdk.iotda.v5.model.UpdateDevice;
+import com.huaweicloud.sdk.iotda.v5.model.UpdateDeviceRequest;
+import org.example.service.ApiQuotaLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.IntFunction;
+
+/**
+ * 对已创建设备的批量删除、更新操作
+ * 每个方法处理一个设备，由ProvisioningEngine.runOperation并发调度；
+ * SDK异常原样抛出，由引擎判断是否重试；每次接口调用前先获取注册类配额
+ */
+public class BulkDeviceOperations {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkDeviceOperations.class);
+
+    // 设备描述模板中的序号占位符
+    private static final String INDEX_PLACEHOLDER = "{index}";
+
+    private final IoTDAClient client;
+    private final String descriptionTemplate;
+    private final boolean regenerateSecret;
+    private final IntFunction<String> secretGenerator;
+    private final ApiQuotaLimiter quotaLimiter;
+    private final String region;
+
+    /**
+     * @param descriptionTemplate 更新后的设备描述，可包含{index}占位符；为null时不更新描述
+     * @param regenerateSecret 更新时是否重置设备密钥
+     * @param secretGenerator 按设备序号生成新密钥
+     * @param region 配额所属地域
+     */
+    public BulkDeviceOperations(IoTDAClient client, String descriptionTemplate, boolean regenerateSecret,
+                                IntFunction<String> secretGenerator, ApiQuotaLimiter quotaLimiter, String region) {
+        this.client = client;
+        this.descriptionTemplate = descriptionTemplate;
+        this.regenerateSecret = regenerateSecret;
+        this.secretGenerator = secretGenerator;
+        this.quotaLimiter = quotaLimiter;
+        this.region = region;
+    }
+
+    /**
+     * 删除设备；设备已不存在（404）视为删除成功，便于重复执行
+     */
+    public BatchWaterMeterCreator.WaterMeterDevice delete(BatchWaterMeterCreator.WaterMeterDevice device) {
+        acquireQuota();
+        try {
+            client.deleteDevice(new DeleteDeviceRequest().withDeviceId(device.getDeviceId()));
+            logger.debug("删除设备成功: {} (ID: {})", device.getDeviceName(), device.getDeviceId());
+        } catch (ServiceResponseException e) {
+            if (e.getHttpStatusCode() != 404) {
+                throw e;
+            }
+            logger.debug("设备{}已不存在，跳过删除", device.getDeviceId());
+        }
+        return device;
+    }
+
+    /**
+     * 更新设备描述，并按需重置设备密钥
+     * @return 更新后的设备信息，重置密钥时包含新密钥
+     */
+    public BatchWaterMeterCreator.WaterMeterDevice update(BatchWaterMeterCreator.WaterMeterDevice device) {
+        if (descriptionTemplate != null) {
+            String description = descriptionTemplate.replace(INDEX_PLACEHOLDER, Integer.toString(device.getIndex()));
+            acquireQuota();
+            client.updateDevice(new UpdateDeviceRequest()
+                    .withDeviceId(device.getDeviceId())
+                    .withBody(new UpdateDevice().withDescription(description)));
+        }
+
+        if (regenerateSecret) {
+            String secret = secretGenerator.apply(device.getIndex());
+            acquireQuota();
+            client.resetDeviceSecret(new ResetDeviceSecretRequest()
+                    .withDeviceId(device.getDeviceId())
+                    .withActionId("resetSecret")
+                    .withBody(new ResetDeviceSecret().withSecret(secret)));
+            device.setSecret(secret);
+        }
+
+        logger.debug("更新设备成功: {} (ID: {})", device.getDeviceName(), device.getDeviceId());
+        return device;
+    }
+
+    private void acquireQuota() {
+        quotaLimiter.acquire(region, ApiQuotaLimiter.ApiClass.PROVISIONING, ApiQuotaLimiter.Priority.BACKGROUND);
+    }
+}
@@ -0,0 +1,135 @@
+package org.example.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 逐行读取已创建设备记录，作为批量删除、更新的输入
+ * 支持设备创建报告（CSV，按表头识别）和创建日志两种格式，不在内存中保留设备列表
+ */
+public class DeviceRecordReader implements Iterator<BatchWaterMeterCreator.WaterMeterDevice>, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceRecordReader.class);
+
+    private final Path path;
+    private final BufferedReader reader;
+    private final boolean report;
+    private String pendingLine;
+    private BatchWaterMeterCreator.WaterMeterDevice next;
+    private long skipped;
+
+    public DeviceRecordReader(Path path) throws IOException {
+        this.path = path;
+        this.reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+
+        String first = reader.readLine();
+        // 报告文件第一行是表头，日志文件没有表头，第一行就是记录
+        this.report = first != null && DeviceReportWriter.HEADER.equals(stripBom(first));
+        this.pendingLine = report ? null : first;
+        logger.info("读取设备记录: {}（{}格式）", path, report ? "报告" : "日志");
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            String line = pendingLine != null ? pendingLine : readLine();
+            pendingLine = null;
+            if (line == null) {
+                return false;
+            }
+            if (line.isEmpty()) {
+                continue;
+            }
+            next = report ? parseReportLine(line) : parseJournalLine(line);
+            if (next == null) {
+                skipped++;
+                logger.warn("跳过无法解析的设备记录: {}", line);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public BatchWaterMeterCreator.WaterMeterDevice next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        BatchWaterMeterCreator.WaterMeterDevice device = next;
+        next = null;
+        return device;
+    }
+
+    private String readLine() {
+        try {
+            return reader.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取设备记录失败: " + path, e);
+        }
+    }
+
+    /**
+     * 报告行：序号,设备名称,设备ID,节点ID,设备密钥,产品ID,创建时间
+     */
+    private static BatchWaterMeterCreator.WaterMeterDevice parseReportLine(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 6) {
+            return null;
+        }
+        try {
+            BatchWaterMeterCreator.WaterMeterDevice device = new BatchWaterMeterCreator.WaterMeterDevice();
+            device.setIndex(Integer.parseInt(fields[0]));
+            device.setDeviceName(fields[1]);
+            device.setDeviceId(fields[2]);
+            device.setNodeId(fields[3]);
+            device.setSecret(fields[4]);
+            device.setProductId(fields[5]);
+            return device;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 日志行：序号,节点ID,设备ID,设备密钥；日志不记录设备名称和产品ID
+     */
+    private static BatchWaterMeterCreator.WaterMeterDevice parseJournalLine(String line) {
+        ProvisioningJournal.JournalEntry entry = ProvisioningJournal.JournalEntry.parse(line);
+        if (entry == null) {
+            return null;
+        }
+        BatchWaterMeterCreator.WaterMeterDevice device = new BatchWaterMeterCreator.WaterMeterDevice();
+        device.setIndex(entry.getIndex());
+        device.setDeviceName(BatchWaterMeterCreator.deviceNameOf(entry.getIndex()));
+        device.setDeviceId(entry.getDeviceId());
+        device.setNodeId(entry.getNodeId());
+        device.setSecret(entry.getSecret());
+        device.setProductId("");
+        return device;
+    }
+
+    private static String stripBom(String line) {
+        return line.startsWith("\uFEFF") ? line.substring(1) : line;
+    }
+
+    /**
+     * 无法解析而跳过的行数
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
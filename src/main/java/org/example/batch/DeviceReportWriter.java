@@ -0,0 +1,92 @@
+package org.example.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+
+/**
+ * 设备创建报告（CSV）流式写入
+ * 设备创建后即按批写入文件，不在内存中保留设备列表；每批只格式化一次时间戳
+ */
+public class DeviceReportWriter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceReportWriter.class);
+
+    static final String HEADER = "序号,设备名称,设备ID,节点ID,设备密钥,产品ID,创建时间";
+
+    // 写缓冲区大小，约可容纳2000行
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final Path path;
+    private final BufferedWriter writer;
+    private long rowCount;
+
+    public DeviceReportWriter(Path path) throws IOException {
+        this.path = path;
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.writer = new BufferedWriter(
+                new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        writer.write(HEADER);
+        writer.write('\n');
+    }
+
+    /**
+     * 写入一批设备，同一批设备使用相同的创建时间
+     */
+    public synchronized void writeBatch(Collection<BatchWaterMeterCreator.WaterMeterDevice> devices) throws IOException {
+        if (devices.isEmpty()) {
+            return;
+        }
+
+        String createdAt = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        for (BatchWaterMeterCreator.WaterMeterDevice device : devices) {
+            writer.write(Integer.toString(device.getIndex()));
+            writer.write(',');
+            writer.write(device.getDeviceName());
+            writer.write(',');
+            writer.write(String.valueOf(device.getDeviceId()));
+            writer.write(',');
+            writer.write(device.getNodeId());
+            writer.write(',');
+            // 派生密钥模式下不保存密钥
+            writer.write(device.getSecret() != null ? device.getSecret() : "");
+            writer.write(',');
+            writer.write(device.getProductId());
+            writer.write(',');
+            writer.write(createdAt);
+            writer.write('\n');
+        }
+        rowCount += devices.size();
+    }
+
+    /**
+     * 已写入的设备行数
+     */
+    public synchronized long getRowCount() {
+        return rowCount;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+        logger.info("设备信息已导出到文件: {}，共{}行", path, rowCount);
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.batch;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * 设备密钥生成
+ * 随机模式：每个线程持有独立的SecureRandom，一次填充4KB随机块，按需切出8字节编码为16位十六进制密钥，
+ * 避免UUID.randomUUID()在共享SecureRandom上的锁竞争和多余的字符串处理
+ * 派生模式：密钥 = HMAC-SHA256(主密钥, 设备序号)的前8字节，同一主密钥和序号总得到同一密钥，
+ * 报告和日志中无需保存密钥
+ */
+public class DeviceSecretGenerator {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    // 密钥字节数，编码后为16位十六进制字符
+    private static final int SECRET_BYTES = 8;
+    // 每个线程一次生成的随机字节数，可生成512个密钥
+    private static final int BLOCK_SIZE = 4096;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final SecretKeySpec masterKey;
+    private final ThreadLocal<RandomBlock> randomBlocks = ThreadLocal.withInitial(RandomBlock::new);
+    private final ThreadLocal<Mac> macs;
+
+    private DeviceSecretGenerator(SecretKeySpec masterKey) {
+        this.masterKey = masterKey;
+        this.macs = masterKey != null ? ThreadLocal.withInitial(this::newMac) : null;
+    }
+
+    /**
+     * 随机密钥
+     */
+    public static DeviceSecretGenerator random() {
+        return new DeviceSecretGenerator(null);
+    }
+
+    /**
+     * 由主密钥和设备序号派生密钥
+     */
+    public static DeviceSecretGenerator derived(String masterKey) {
+        if (masterKey == null || masterKey.isEmpty()) {
+            throw new IllegalArgumentException("派生密钥模式需要配置主密钥");
+        }
+        DeviceSecretGenerator generator = new DeviceSecretGenerator(
+                new SecretKeySpec(masterKey.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+        // 提前校验算法可用，避免在工作线程中才失败
+        generator.newMac();
+        return generator;
+    }
+
+    /**
+     * 生成指定序号设备的密钥，随机模式下忽略序号
+     */
+    public String secretFor(int index) {
+        return masterKey != null ? derive(index) : randomBlocks.get().nextSecret();
+    }
+
+    /**
+     * 是否为派生模式，派生模式下密钥可随时由序号重新计算
+     */
+    public boolean isDerived() {
+        return masterKey != null;
+    }
+
+    private String derive(int index) {
+        Mac mac = macs.get();
+        mac.update((byte) (index >>> 24));
+        mac.update((byte) (index >>> 16));
+        mac.update((byte) (index >>> 8));
+        mac.update((byte) index);
+        return encode(mac.doFinal(), 0, new char[SECRET_BYTES * 2]);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(masterKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化" + HMAC_ALGORITHM + "失败", e);
+        }
+    }
+
+    private static String encode(byte[] bytes, int offset, char[] chars) {
+        for (int i = 0; i < SECRET_BYTES; i++) {
+            int b = bytes[offset + i];
+            chars[i * 2] = HEX[(b >>> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[b & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 线程独占的随机块
+     */
+    private static class RandomBlock {
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final char[] chars = new char[SECRET_BYTES * 2];
+        private int position = BLOCK_SIZE;
+
+        String nextSecret() {
+            if (position + SECRET_BYTES > BLOCK_SIZE) {
+                random.nextBytes(block);
+                position = 0;
+            }
+            String secret = encode(block, position, chars);
+            position += SECRET_BYTES;
+            return secret;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 最终失败设备报告（CSV）
+ * 只记录不可重试或重试耗尽的设备，可据此排查后用续跑模式补建
+ */
+public class FailureReportWriter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FailureReportWriter.class);
+
+    static final String HEADER = "序号,节点ID,尝试次数,失败原因";
+
+    private final Path path;
+    private final BufferedWriter writer;
+    private long rowCount;
+
+    public FailureReportWriter(Path path) throws IOException {
+        this.path = path;
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        writer.write(HEADER);
+        writer.write('\n');
+    }
+
+    /**
+     * 写入一条失败记录
+     */
+    public synchronized void write(int index, int attempts, String reason) throws IOException {
+        writer.write(Integer.toString(index));
+        writer.write(',');
+        writer.write(BatchWaterMeterCreator.nodeIdOf(index));
+        writer.write(',');
+        writer.write(Integer.toString(attempts));
+        writer.write(',');
+        // 失败原因中的逗号和换行会破坏CSV格式
+        writer.write(reason == null ? "" : reason.replace(',', '，').replace('\n', ' '));
+        writer.write('\n');
+        rowCount++;
+    }
+
+    public synchronized long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+        if (rowCount > 0) {
+            logger.warn("有{}个设备最终创建失败，详见: {}", rowCount, path);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.batch;
+
+import com.huaweicloud.sdk.core.http.FormDataFilePart;
+import com.huaweicloud.sdk.iotda.v5.IoTDAClient;
+import com.huaweicloud.sdk.iotda.v5.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于华为云IoTDA SDK的批量任务实现
+ * 一个网关实例只处理一种任务类型：批量注册设备（createDevices）或批量下发命令（createCommands）
+ */
+public class IoTDABatchTaskGateway implements BatchTaskGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(IoTDABatchTaskGateway.class);
+
+    public static final String TASK_TYPE_CREATE_DEVICES = "createDevices";
+    public static final String TASK_TYPE_CREATE_COMMANDS = "createCommands";
+    private static final int LIST_PAGE_LIMIT = 50;
+    private static final int DETAIL_PAGE_LIMIT = 50;
+
+    private final IoTDAClient client;
+    private final String taskType;
+
+    public IoTDABatchTaskGateway(IoTDAClient client) {
+        this(client, TASK_TYPE_CREATE_DEVICES);
+    }
+
+    /**
+     * @param taskType 任务类型，决定状态查询的范围和任务明细的解析方式
+     */
+    public IoTDABatchTaskGateway(IoTDAClient client, String taskType) {
+        this.client = client;
+        this.taskType = taskType;
+    }
+
+    @Override
+    public String uploadFile(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            UploadBatchTaskFileRequest request = new UploadBatchTaskFileRequest()
+                    .withBody(new UploadBatchTaskFileRequestBody()
+                            .withFile(new FormDataFilePart(in, file.getFileName().toString())));
+
+            UploadBatchTaskFileResponse response = client.uploadBatchTaskFile(request);
+            logger.info("注册文件上传成功: {} (文件ID: {})", file, response.getFileId());
+            return response.getFileId();
+        } catch (IOException e) {
+            throw new RuntimeException("读取注册文件失败: " + file, e);
+        }
+    }
+
+    @Override
+    public String createDeviceTask(String taskName, String fileId) {
+        Map<String, Object> document = new HashMap<>();
+        document.put("file_id", fileId);
+
+        CreateBatchTaskRequest request = new CreateBatchTaskRequest()
+                .withBody(new CreateBatchTask()
+                        .withTaskName(taskName)
+                        .withTaskType(TASK_TYPE_CREATE_DEVICES)
+                        .withDocument(document));
+
+        CreateBatchTaskResponse response = client.createBatchTask(request);
+        return response.getTaskId();
+    }
+
+    /**
+     * 创建批量下发命令任务
+     * @param targets 目标设备ID
+     * @param document 命令内容：service_id、command_name、paras
+     * @return 任务ID
+     */
+    public String createCommandTask(String taskName, List<String> targets, Map<String, Object> document) {
+        CreateBatchTaskRequest request = new CreateBatchTaskRequest()
+                .withBody(new CreateBatchTask()
+                        .withTaskName(taskName)
+                        .withTaskType(TASK_TYPE_CREATE_COMMANDS)
+                        .withTargets(targets)
+                        .withDocument(document));
+
+        CreateBatchTaskResponse response = client.createBatchTask(request);
+        return response.getTaskId();
+    }
+
+    @Override
+    public Map<String, String> listTaskStatuses(Collection<String> taskIds) {
+        Set<String> wanted = new HashSet<>(taskIds);
+        Map<String, String> statuses = new HashMap<>();
+
+        // 按任务类型分页列出，一次调用覆盖多个任务，直到目标任务全部找到
+        String marker = null;
+        do {
+            ListBatchTasksRequest request = new ListBatchTasksRequest()
+                    .withTaskType(taskType)
+                    .withLimit(LIST_PAGE_LIMIT)
+                    .withMarker(marker);
+
+            ListBatchTasksResponse response = client.listBatchTasks(request);
+            if (response.getBatchtasks() != null) {
+                for (Task task : response.getBatchtasks()) {
+                    if (wanted.contains(task.getTaskId())) {
+                        statuses.put(task.getTaskId(), task.getStatus());
+                    }
+                }
+            }
+            marker = response.getPage() != null ? response.getPage().getMarker() : null;
+            if (response.getBatchtasks() == null || response.getBatchtasks().size() < LIST_PAGE_LIMIT) {
+                marker = null;
+            }
+        } while (marker != null && statuses.size() < wanted.size());
+
+        return statuses;
+    }
+
+    @Override
+    public TaskDetailPage showTaskDetails(String taskId, String marker) {
+        ShowBatchTaskRequest request = new ShowBatchTaskRequest()
+                .withTaskId(taskId)
+                .withLimit(DETAIL_PAGE_LIMIT)
+                .withMarker(marker);
+
+        ShowBatchTaskResponse response = client.showBatchTask(request);
+
+        List<DeviceTaskResult> results = new ArrayList<>();
+        if (response.getTaskDetails() != null) {
+            for (TaskDetail detail : response.getTaskDetails()) {
+                boolean success = "Success".equals(detail.getStatus());
+                String errorMessage = detail.getError() != null
+                        ? detail.getError().getErrorCode() + " - " + detail.getError().getErrorMsg()
+                        : null;
+                if (TASK_TYPE_CREATE_COMMANDS.equals(taskType)) {
+                    results.add(new DeviceTaskResult(null, success, detail.getTarget(), errorMessage,
+                            extractOutput(detail.getOutput(), "command_id")));
+                } else {
+                    results.add(new DeviceTaskResult(detail.getTarget(), success,
+                            extractOutput(detail.getOutput(), "device_id"), errorMessage));
+                }
+            }
+        }
+
+        String nextMarker = null;
+        if (response.getPage() != null && results.size() == DETAIL_PAGE_LIMIT) {
+            nextMarker = response.getPage().getMarker();
+        }
+        return new TaskDetailPage(results, nextMarker);
+    }
+
+    /**
+     * 从子任务输出中提取平台分配的ID（设备ID或命令ID）
+     */
+    private String extractOutput(Object output, String key) {
+        if (output instanceof Map) {
+            Object value = ((Map<?, ?>) output).get(key);
+            return value != null ? value.toString() : null;
+        }
+        return output != null ? output.toString() : null;
+    }
+}
@@ -0,0 +1,260 @@
+package org.example.batch;
+
+import com.huaweicloud.sdk.iotda.v5.IoTDAClient;
+import com.huaweicloud.sdk.iotda.v5.model.ListProductsRequest;
+import com.huaweicloud.sdk.iotda.v5.model.ListProductsResponse;
+import com.huaweicloud.sdk.iotda.v5.model.ProductSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 产品目录缓存
+ * 按marker分页拉取全部产品，建立按产品名称和设备类型的索引，并持久化到本地缓存文件，
+ * 缓存未过期时后续运行直接读取文件，不再调用listProducts
+ *
+ * 缓存文件第一行为“拉取时间（毫秒）\t接入环境”，其后每行“产品ID\t设备类型\t产品名称”；
+ * 接入环境与本次运行不同（切换了地域、endpoint或账号）时缓存视为无效
+ */
+public class ProductCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCatalog.class);
+
+    // listProducts单页最大条数
+    private static final int PAGE_LIMIT = 50;
+
+    private final IoTDAClient client;
+    private final Path cacheFile;
+    private final long ttlMillis;
+    private final String environment;
+
+    private List<Product> products;
+    private Map<String, Product> byName;
+    private Map<String, Product> byDeviceType;
+
+    /**
+     * @param cacheFile 缓存文件
+     * @param ttlMillis 缓存有效期，0表示不使用缓存
+     * @param environment 接入环境标识，见 {@link ProvisioningConfig#getApiEnvironment()}
+     */
+    public ProductCatalog(IoTDAClient client, Path cacheFile, long ttlMillis, String environment) {
+        this.client = client;
+        this.cacheFile = cacheFile;
+        this.ttlMillis = ttlMillis;
+        this.environment = environment;
+    }
+
+    /**
+     * 按产品名称精确查找
+     */
+    public String findByName(String name) {
+        Product product = index().byName.get(name);
+        return product != null ? product.productId : null;
+    }
+
+    /**
+     * 按设备类型查找
+     */
+    public String findByDeviceType(String deviceType) {
+        Product product = index().byDeviceType.get(deviceType);
+        return product != null ? product.productId : null;
+    }
+
+    /**
+     * 查找第一个名称满足条件的产品
+     */
+    public String findFirstByName(Predicate<String> condition) {
+        for (Product product : index().products) {
+            if (product.name != null && condition.test(product.name)) {
+                return product.productId;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 任意一个可用产品，没有产品时返回null
+     */
+    public String findAny() {
+        List<Product> all = index().products;
+        if (all.isEmpty()) {
+            return null;
+        }
+        logger.info("使用现有产品: {} (ID: {})", all.get(0).name, all.get(0).productId);
+        return all.get(0).productId;
+    }
+
+    /**
+     * 清空内存索引并删除缓存文件，产品发生变化（例如新建产品）后调用
+     */
+    public synchronized void invalidate() {
+        products = null;
+        try {
+            Files.deleteIfExists(cacheFile);
+        } catch (IOException e) {
+            logger.warn("删除产品缓存文件失败: {}", e.getMessage());
+        }
+    }
+
+    private synchronized ProductCatalog index() {
+        if (products == null) {
+            List<Product> loaded = loadCache();
+            if (loaded == null) {
+                loaded = fetchAll();
+                saveCache(loaded);
+            }
+            buildIndex(loaded);
+        }
+        return this;
+    }
+
+    private void buildIndex(List<Product> loaded) {
+        Map<String, Product> names = new HashMap<>(loaded.size() * 2);
+        Map<String, Product> deviceTypes = new HashMap<>();
+        for (Product product : loaded) {
+            // 同名或同类型的产品保留最先出现的一个，与逐个扫描的结果一致
+            if (product.name != null) {
+                names.putIfAbsent(product.name, product);
+            }
+            if (product.deviceType != null) {
+                deviceTypes.putIfAbsent(product.deviceType, product);
+            }
+        }
+        this.products = Collections.unmodifiableList(loaded);
+        this.byName = names;
+        this.byDeviceType = deviceTypes;
+    }
+
+    /**
+     * 按marker分页拉取全部产品
+     */
+    private List<Product> fetchAll() {
+        List<Product> all = new ArrayList<>();
+        String marker = null;
+        int pages = 0;
+        do {
+            ListProductsRequest request = new ListProductsRequest().withLimit(PAGE_LIMIT);
+            if (marker != null) {
+                request.withMarker(marker);
+            }
+            ListProductsResponse response = client.listProducts(request);
+            pages++;
+
+            List<ProductSummary> page = response.getProducts();
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            for (ProductSummary summary : page) {
+                all.add(new Product(summary.getProductId(), summary.getDeviceType(), summary.getName()));
+            }
+
+            String nextMarker = response.getPage() != null ? response.getPage().getMarker() : null;
+            // 不足一页或marker不再前进时说明已到最后一页
+            marker = page.size() < PAGE_LIMIT || nextMarker == null || nextMarker.equals(marker) ? null : nextMarker;
+        } while (marker != null);
+
+        logger.info("分页拉取产品列表完成，共{}页{}个产品", pages, all.size());
+        return all;
+    }
+
+    /**
+     * 读取未过期的缓存文件，不存在、已过期、属于其他接入环境或损坏时返回null
+     */
+    private List<Product> loadCache() {
+        if (ttlMillis <= 0 || !Files.exists(cacheFile)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            String[] header = String.valueOf(reader.readLine()).split("\t", 2);
+            if (header.length != 2 || !header[1].equals(environment)) {
+                logger.info("产品缓存不属于当前接入环境，重新拉取产品列表");
+                return null;
+            }
+            long fetchedAt = Long.parseLong(header[0].trim());
+            long age = System.currentTimeMillis() - fetchedAt;
+            if (age < 0 || age > ttlMillis) {
+                logger.info("产品缓存已过期，重新拉取产品列表");
+                return null;
+            }
+
+            List<Product> cached = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    cached.add(new Product(fields[0], emptyToNull(fields[1]), emptyToNull(fields[2])));
+                }
+            }
+            logger.info("从缓存{}加载{}个产品", cacheFile, cached.size());
+            return cached;
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("读取产品缓存失败，重新拉取产品列表: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存文件，先写临时文件再替换，避免并发运行读到半个文件
+     */
+    private void saveCache(List<Product> all) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(Long.toString(System.currentTimeMillis()));
+            writer.write('\t');
+            writer.write(environment);
+            writer.write('\n');
+            for (Product product : all) {
+                writer.write(product.productId);
+                writer.write('\t');
+                writer.write(nullToEmpty(product.deviceType));
+                writer.write('\t');
+                writer.write(nullToEmpty(product.name).replace('\t', ' ').replace('\n', ' '));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            logger.warn("写入产品缓存失败: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("替换产品缓存文件失败: {}", e.getMessage());
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static class Product {
+        private final String productId;
+        private final String deviceType;
+        private final String name;
+
+        Product(String productId, String deviceType, String name) {
+            this.productId = productId;
+            this.deviceType = deviceType;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package org.example.batch;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * 设备批量创建配置
+ * 取值优先级：命令行参数（--key=value） > 配置文件（--config=xxx.properties）
+ * > 系统属性（-Dprovision.key=value） > 默认值
+ */
+public class ProvisioningConfig {
+
+    private final Properties properties;
+
+    private ProvisioningConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 从命令行参数加载配置
+     */
+    public static ProvisioningConfig load(String[] args) throws IOException {
+        Properties cli = new Properties();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("无法识别的参数: " + arg + "，格式应为 --key=value");
+            }
+            int eq = arg.indexOf('=');
+            cli.setProperty(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        Properties merged = new Properties();
+        String configFile = cli.getProperty("config");
+        if (configFile != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(configFile), StandardCharsets.UTF_8)) {
+                merged.load(reader);
+            }
+        }
+        merged.putAll(cli);
+        return new ProvisioningConfig(merged);
+    }
+
+    public String getAccessKey() {
+        return get("access.key", System.getenv("HUAWEI_AK"));
+    }
+
+    public String getSecretKey() {
+        return get("secret.key", System.getenv("HUAWEI_SK"));
+    }
+
+    public String getRegion() {
+        return get("region", "cn-north-4");
+    }
+
+    /**
+     * 自定义IoTDA接入地址，例如本地模拟服务 http://127.0.0.1:18080；不配置时按region访问华为云
+     */
+    public String getEndpoint() {
+        return get("endpoint", null);
+    }
+
+    /**
+     * 使用自定义endpoint时的项目ID
+     */
+    public String getProjectId() {
+        return get("project.id", "simulator");
+    }
+
+    /**
+     * 接入环境标识：接入地址（endpoint及项目ID，或region）加账号AK的哈希，
+     * 用于区分不同环境下的本地缓存，不包含AK原文
+     */
+    public String getApiEnvironment() {
+        String endpoint = getEndpoint();
+        String target = endpoint != null ? endpoint + "|" + getProjectId() : getRegion();
+        String accessKey = getAccessKey();
+        return target + "|" + (accessKey != null ? Integer.toHexString(accessKey.hashCode()) : "");
+    }
+
+    /**
+     * 创建方式：single 多线程同步调用createDevice；async 异步客户端流水线调用createDevice；
+     * batch-task 通过IoTDA批量任务注册
+     */
+    public String getMode() {
+        return get("mode", "single");
+    }
+
+    /**
+     * 执行的操作：create 创建设备；delete 批量删除；update 批量更新描述或密钥
+     */
+    public String getOperation() {
+        return get("operation", "create");
+    }
+
+    /**
+     * 批量删除、更新的输入文件：设备创建报告（CSV）或创建日志
+     */
+    public String getInputFile() {
+        return get("input.file", null);
+    }
+
+    /**
+     * 批量更新后的设备描述，可包含{index}占位符；不配置时不更新描述
+     */
+    public String getUpdateDescription() {
+        return get("update.description", null);
+    }
+
+    /**
+     * 批量更新时是否重置设备密钥
+     */
+    public boolean isUpdateRegenerateSecret() {
+        return Boolean.parseBoolean(get("update.regenerate.secret", "false"));
+    }
+
+    /**
+     * 设备密钥生成方式：random 随机生成；derived 由主密钥和设备序号派生，报告和日志中不保存密钥
+     */
+    public String getSecretMode() {
+        return get("secret.mode", "random");
+    }
+
+    /**
+     * 派生密钥模式的主密钥
+     */
+    public String getSecretMasterKey() {
+        return get("secret.master.key", System.getenv("DEVICE_SECRET_MASTER_KEY"));
+    }
+
+    public boolean isResume() {
+        return Boolean.parseBoolean(get("resume", "false"));
+    }
+
+    /**
+     * 起始设备序号
+     */
+    public int getStartIndex() {
+        return getInt("start.index", 1);
+    }
+
+    public int getTotalDevices() {
+        return getInt("total.devices", 500);
+    }
+
+    public int getBatchSize() {
+        return getInt("batch.size", 50);
+    }
+
+    public int getThreadPoolSize() {
+        return getInt("thread.pool.size", 10);
+    }
+
+    /**
+     * 同时在执行或排队的批次上限，默认为线程数的2倍
+     */
+    public int getMaxInFlightBatches() {
+        return getInt("max.inflight.batches", getThreadPoolSize() * 2);
+    }
+
+    /**
+     * 异步模式下同时在途的创建请求上限
+     */
+    public int getAsyncWindow() {
+        return getInt("async.window", 200);
+    }
+
+    /**
+     * 是否启用AIMD自适应并发控制
+     */
+    public boolean isAdaptiveEnabled() {
+        return Boolean.parseBoolean(get("adaptive.enabled", "false"));
+    }
+
+    public int getAdaptiveInitialLimit() {
+        return getInt("adaptive.initial.limit", 4);
+    }
+
+    public int getAdaptiveMinLimit() {
+        return getInt("adaptive.min.limit", 1);
+    }
+
+    /**
+     * 遇到限流或过载时并发上限的乘数
+     */
+    public double getAdaptiveBackoffRatio() {
+        return Double.parseDouble(get("adaptive.backoff.ratio", "0.5"));
+    }
+
+    /**
+     * 平滑延迟超过最小延迟的多少倍视为过载
+     */
+    public double getAdaptiveLatencyTolerance() {
+        return Double.parseDouble(get("adaptive.latency.tolerance", "2.0"));
+    }
+
+    /**
+     * 注册类接口（创建、删除、更新设备）在本地域的持续速率（次/秒），
+     * 应按账号配额扣除同时运行的其他服务后设置
+     */
+    public double getProvisioningQuotaRate() {
+        return Double.parseDouble(get("quota.provisioning.rate", "50"));
+    }
+
+    /**
+     * 注册类接口允许的突发请求数
+     */
+    public int getProvisioningQuotaBurst() {
+        return getInt("quota.provisioning.burst", 50);
+    }
+
+    /**
+     * 单个设备最多尝试次数（含首次）
+     */
+    public int getRetryMaxAttempts() {
+        return getInt("retry.max.attempts", 5);
+    }
+
+    public long getRetryBaseDelayMillis() {
+        return getLong("retry.base.delay.ms", 500);
+    }
+
+    public long getRetryMaxDelayMillis() {
+        return getLong("retry.max.delay.ms", 30000);
+    }
+
+    /**
+     * 整个运行允许的重试总次数，默认为设备总数的10%（至少100次）
+     */
+    public long getRetryBudget() {
+        return getLong("retry.budget", Math.max(100, getTotalDevices() / 10));
+    }
+
+    /**
+     * 同一线程两次创建请求之间的间隔，0表示不等待（默认）
+     * 请求速率已由共享的接口配额和自适应并发控制，一般不需要再设置
+     */
+    public long getRequestIntervalMillis() {
+        return getLong("request.interval.ms", 0);
+    }
+
+    /**
+     * 操作日志文件，删除、更新各自使用独立的日志，避免与创建日志混在一起
+     */
+    public String getJournalFile() {
+        String operation = getOperation();
+        return get("journal.file", "create".equals(operation)
+                ? "water_meter_devices.journal"
+                : "water_meter_devices." + operation + ".journal");
+    }
+
+    public int getJournalSyncEvery() {
+        return getInt("journal.sync.every", 50);
+    }
+
+    /**
+     * 产品目录缓存文件
+     */
+    public String getProductCacheFile() {
+        return get("product.cache.file", "product_catalog.cache");
+    }
+
+    /**
+     * 产品目录缓存有效期，0表示每次运行都重新拉取
+     */
+    public long getProductCacheTtlMillis() {
+        return getLong("product.cache.ttl.ms", 60 * 60 * 1000L);
+    }
+
+    public int getDevicesPerTask() {
+        return getInt("devices.per.task", 10000);
+    }
+
+    public long getTaskPollIntervalMillis() {
+        return getLong("task.poll.interval.ms", 5000);
+    }
+
+    public long getTaskTimeoutMillis() {
+        return getLong("task.timeout.ms", 2 * 60 * 60 * 1000L);
+    }
+
+    /**
+     * 读取配置项，未配置时依次回退到系统属性 provision.{key} 和默认值
+     */
+    public String get(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            value = System.getProperty("provision." + key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
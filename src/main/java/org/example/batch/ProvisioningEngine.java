@@ -0,0 +1,632 @@
+package org.example.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * 设备批量创建引擎
+ * 按批次惰性生成设备序号，用信号量限制同时在执行或排队的批次数，
+ * 设备结果直接写入创建日志和报告，不在内存中累积，可支撑百万级设备的创建
+ *
+ * 工作线程把每批结果放入自己的缓冲区，批次结束后整体投递到无锁队列，
+ * 由单一写线程写入日志和报告，单设备路径上没有任何锁
+ *
+ * 异步模式下由一个线程持续发起异步请求，用信号量保持固定数量的在途请求，
+ * 吞吐量只受接口配额限制，而不受线程数限制
+ *
+ * 启用adaptive.enabled后，并发数由AdaptiveConcurrencyLimiter根据限流响应和延迟动态调整，
+ * 线程数或async.window只作为上限
+ *
+ * 网络错误、超时和限流等可重试失败按RetryPolicy放入延迟队列，到期后由调度线程重新派发，
+ * 工作线程不会为等待重试而阻塞；只有不可重试或重试耗尽的设备记入失败报告
+ *
+ * 除创建外，runOperation可对已有设备记录流执行批量删除、更新等操作，
+ * 与创建共用批次调度、并发控制、重试和日志
+ */
+public class ProvisioningEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProvisioningEngine.class);
+
+    private static final long PROGRESS_LOG_INTERVAL_MS = 5000;
+    private static final long DRAIN_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long RETRY_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int DRAIN_MAX_ROWS = 1000;
+
+    /**
+     * 单个设备的创建逻辑
+     */
+    @FunctionalInterface
+    public interface DeviceFactory {
+        BatchWaterMeterCreator.WaterMeterDevice create(int index) throws Exception;
+    }
+
+    /**
+     * 单个设备的异步创建逻辑
+     */
+    @FunctionalInterface
+    public interface AsyncDeviceFactory {
+        CompletableFuture<BatchWaterMeterCreator.WaterMeterDevice> createAsync(int index);
+    }
+
+    /**
+     * 对已有设备执行的操作，例如删除或更新
+     */
+    @FunctionalInterface
+    public interface DeviceOperation {
+
+        /**
+         * @param device 输入记录
+         * @return 操作后的设备信息，写入日志和报告
+         */
+        BatchWaterMeterCreator.WaterMeterDevice apply(BatchWaterMeterCreator.WaterMeterDevice device) throws Exception;
+    }
+
+    /**
+     * 引擎内部统一的单设备执行步骤，input在创建时为null
+     */
+    private interface Step {
+        BatchWaterMeterCreator.WaterMeterDevice execute(int index, BatchWaterMeterCreator.WaterMeterDevice input)
+                throws Exception;
+    }
+
+    /**
+     * 异常分类，引擎会沿异常的cause链逐层判断
+     */
+    public interface ErrorClassifier {
+
+        /**
+         * 是否为限流或服务端过载（HTTP 429/5xx），用于自适应并发控制
+         */
+        boolean isOverload(Throwable error);
+
+        /**
+         * 是否值得重试
+         */
+        boolean isRetryable(Throwable error);
+    }
+
+    private final ProvisioningConfig config;
+    private final ProvisioningJournal journal;
+    private final DeviceReportWriter reportWriter;
+    private final FailureReportWriter failureWriter;
+    private final ErrorClassifier errorClassifier;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final RetryPolicy retryPolicy;
+
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+
+    // 已完成批次的结果，多个工作线程投递、写线程消费
+    private final Queue<List<BatchWaterMeterCreator.WaterMeterDevice>> completedBatches = new ConcurrentLinkedQueue<>();
+    // 等待重试的设备，到期后才能取出
+    private final DelayQueue<RetryItem> retryQueue = new DelayQueue<>();
+    private volatile boolean producing;
+
+    public ProvisioningEngine(ProvisioningConfig config, ProvisioningJournal journal, DeviceReportWriter reportWriter) {
+        this(config, journal, reportWriter, null, new ErrorClassifier() {
+            @Override
+            public boolean isOverload(Throwable error) {
+                return false;
+            }
+
+            @Override
+            public boolean isRetryable(Throwable error) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * @param failureWriter 最终失败设备报告，可为null
+     * @param errorClassifier 异常分类，决定自适应并发的下调和是否重试
+     */
+    public ProvisioningEngine(ProvisioningConfig config, ProvisioningJournal journal, DeviceReportWriter reportWriter,
+                              FailureReportWriter failureWriter, ErrorClassifier errorClassifier) {
+        this.config = config;
+        this.journal = journal;
+        this.reportWriter = reportWriter;
+        this.failureWriter = failureWriter;
+        this.errorClassifier = errorClassifier;
+        this.limiter = config.isAdaptiveEnabled() ? createLimiter(config) : null;
+        this.retryPolicy = new RetryPolicy(config.getRetryMaxAttempts(), config.getRetryBaseDelayMillis(),
+                config.getRetryMaxDelayMillis(), config.getRetryBudget());
+    }
+
+    private static AdaptiveConcurrencyLimiter createLimiter(ProvisioningConfig config) {
+        int maxLimit = "async".equals(config.getMode()) ? config.getAsyncWindow() : config.getThreadPoolSize();
+        return new AdaptiveConcurrencyLimiter(config.getAdaptiveInitialLimit(), config.getAdaptiveMinLimit(),
+                maxLimit, config.getAdaptiveBackoffRatio(), config.getAdaptiveLatencyTolerance());
+    }
+
+    /**
+     * 创建配置范围内的全部设备，所有批次及重试完成后返回
+     * @return 本次创建成功的设备数量
+     */
+    public long run(DeviceFactory factory) throws InterruptedException {
+        int batchSize = config.getBatchSize();
+        int maxInFlight = config.getMaxInFlightBatches();
+        long startIndex = config.getStartIndex();
+        long endIndex = startIndex + config.getTotalDevices();
+
+        logger.info("开始创建设备，序号范围: {}-{}，批次大小: {}，线程数: {}，在途批次上限: {}",
+                startIndex, endIndex - 1, batchSize, config.getThreadPoolSize(), maxInFlight);
+
+        Step step = (index, input) -> factory.create(index);
+        Thread writer = startWriter();
+
+        ExecutorService executor = Executors.newFixedThreadPool(config.getThreadPoolSize());
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        try {
+            int batchNumber = 0;
+            for (long from = startIndex; from < endIndex; from += batchSize) {
+                // 优先派发已到期的重试
+                submitDueRetries(executor, inFlight, step, batchSize);
+
+                final int number = ++batchNumber;
+                final int batchStart = (int) from;
+                final int batchEnd = (int) Math.min(from + batchSize, endIndex);
+
+                // 在途批次达到上限时阻塞，避免一次性生成全部批次
+                submit(executor, inFlight, () -> createDeviceBatch(step, number, batchStart, batchEnd));
+            }
+
+            awaitBatchesAndRetries(executor, inFlight, maxInFlight, step, batchSize);
+        } finally {
+            executor.shutdown();
+            stopWriter(writer);
+        }
+
+        logger.info("设备创建完成，成功: {}，失败: {}，重试: {}", createdCount.sum(), failedCount.sum(), retryCount.sum());
+        return createdCount.sum();
+    }
+
+    /**
+     * 对输入的设备记录逐个执行操作（删除、更新等），输入按批次惰性读取
+     * 日志中已完成的设备序号会被跳过，便于中断后续跑
+     * @return 操作成功的设备数量
+     */
+    public long runOperation(Iterator<BatchWaterMeterCreator.WaterMeterDevice> source, DeviceOperation operation)
+            throws InterruptedException {
+        int batchSize = config.getBatchSize();
+        int maxInFlight = config.getMaxInFlightBatches();
+
+        logger.info("开始批量操作设备，批次大小: {}，线程数: {}，在途批次上限: {}",
+                batchSize, config.getThreadPoolSize(), maxInFlight);
+
+        Step step = (index, input) -> operation.apply(input);
+        Thread writer = startWriter();
+
+        ExecutorService executor = Executors.newFixedThreadPool(config.getThreadPoolSize());
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        try {
+            while (source.hasNext()) {
+                submitDueRetries(executor, inFlight, step, batchSize);
+
+                List<RetryItem> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && source.hasNext()) {
+                    BatchWaterMeterCreator.WaterMeterDevice device = source.next();
+                    if (!journal.isCompleted(device.getIndex())) {
+                        batch.add(new RetryItem(device.getIndex(), device, 1, 0));
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    submit(executor, inFlight, () -> createRetryBatch(step, batch));
+                }
+            }
+
+            awaitBatchesAndRetries(executor, inFlight, maxInFlight, step, batchSize);
+        } finally {
+            executor.shutdown();
+            stopWriter(writer);
+        }
+
+        logger.info("批量操作完成，成功: {}，失败: {}，重试: {}", createdCount.sum(), failedCount.sum(), retryCount.sum());
+        return createdCount.sum();
+    }
+
+    /**
+     * 所有新批次已派发，继续处理重试直到全部完成，不设总时长上限
+     */
+    private void awaitBatchesAndRetries(ExecutorService executor, Semaphore inFlight, int maxInFlight,
+                                        Step step, int batchSize) throws InterruptedException {
+        while (true) {
+            if (submitDueRetries(executor, inFlight, step, batchSize)) {
+                continue;
+            }
+            // 先确认没有在途批次（它们可能还会产生重试），再确认重试队列为空
+            if (inFlight.availablePermits() == maxInFlight && retryQueue.isEmpty()) {
+                break;
+            }
+            LockSupport.parkNanos(RETRY_WAIT_NANOS);
+        }
+    }
+
+    private void submit(ExecutorService executor, Semaphore inFlight, Runnable batch) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    batch.run();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 取出全部到期的重试，按批次大小分组派发
+     * @return 是否派发了重试批次
+     */
+    private boolean submitDueRetries(ExecutorService executor, Semaphore inFlight, Step step,
+                                     int batchSize) throws InterruptedException {
+        boolean submitted = false;
+        while (true) {
+            List<RetryItem> due = new ArrayList<>();
+            retryQueue.drainTo(due, batchSize);
+            if (due.isEmpty()) {
+                return submitted;
+            }
+            submit(executor, inFlight, () -> createRetryBatch(step, due));
+            submitted = true;
+        }
+    }
+
+    /**
+     * 以异步方式创建配置范围内的全部设备，保持最多async.window个在途请求
+     * @return 本次创建成功的设备数量
+     */
+    public long runAsync(AsyncDeviceFactory factory) throws InterruptedException {
+        int window = config.getAsyncWindow();
+        long startIndex = config.getStartIndex();
+        long endIndex = startIndex + config.getTotalDevices();
+
+        logger.info("开始异步创建设备，序号范围: {}-{}，在途请求上限: {}", startIndex, endIndex - 1, window);
+
+        Thread writer = startWriter();
+        Semaphore inFlight = new Semaphore(window);
+        try {
+            for (long i = startIndex; i < endIndex; i++) {
+                RetryItem retry;
+                while ((retry = retryQueue.poll()) != null) {
+                    createAsync(factory, inFlight, retry.index, retry.attempt);
+                }
+
+                int index = (int) i;
+                if (!journal.isCompleted(index)) {
+                    createAsync(factory, inFlight, index, 1);
+                }
+            }
+
+            // 等待所有在途请求及重试完成
+            while (true) {
+                RetryItem retry = retryQueue.poll();
+                if (retry != null) {
+                    createAsync(factory, inFlight, retry.index, retry.attempt);
+                    continue;
+                }
+                boolean idle = limiter != null ? limiter.getInFlight() == 0 : inFlight.availablePermits() == window;
+                if (idle && retryQueue.isEmpty()) {
+                    break;
+                }
+                LockSupport.parkNanos(RETRY_WAIT_NANOS);
+            }
+        } finally {
+            stopWriter(writer);
+        }
+
+        logger.info("异步设备创建完成，成功: {}，失败: {}，重试: {}", createdCount.sum(), failedCount.sum(), retryCount.sum());
+        return createdCount.sum();
+    }
+
+    /**
+     * 发起一次异步创建，在途请求达到上限时等待任一请求完成
+     * 结果（成功设备、重试项或最终失败）记录完成后才归还许可，
+     * 等待结束的循环看到许可全部归还时，所有结果都已进入写队列或重试队列
+     */
+    private void createAsync(AsyncDeviceFactory factory, Semaphore inFlight, int index, int attempt)
+            throws InterruptedException {
+        final long startNanos = acquirePermit(inFlight);
+        CompletableFuture<BatchWaterMeterCreator.WaterMeterDevice> future;
+        try {
+            future = factory.createAsync(index);
+        } catch (Exception e) {
+            try {
+                handleFailure(index, null, attempt, e);
+            } finally {
+                releasePermit(inFlight, startNanos, e);
+            }
+            return;
+        }
+
+        future.whenComplete((device, error) -> {
+            try {
+                if (error == null) {
+                    createdCount.increment();
+                    completedBatches.offer(Collections.singletonList(device));
+                } else {
+                    handleFailure(index, null, attempt, error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error);
+                }
+            } finally {
+                releasePermit(inFlight, startNanos, error);
+            }
+        });
+    }
+
+    /**
+     * 获取一个在途请求许可，启用自适应并发时由limiter决定当前上限
+     * @return 请求开始时间
+     */
+    private long acquirePermit(Semaphore fixedPermits) throws InterruptedException {
+        if (limiter != null) {
+            return limiter.acquire();
+        }
+        fixedPermits.acquire();
+        return System.nanoTime();
+    }
+
+    /**
+     * 归还许可并把结果反馈给自适应并发控制
+     * @param error 请求异常，成功时为null
+     */
+    private void releasePermit(Semaphore fixedPermits, long startNanos, Throwable error) {
+        if (limiter == null) {
+            fixedPermits.release();
+        } else if (error == null) {
+            limiter.onSuccess(startNanos);
+        } else {
+            limiter.onFailure(startNanos, matches(error, errorClassifier::isOverload));
+        }
+    }
+
+    private static boolean matches(Throwable error, Predicate<Throwable> predicate) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (predicate.test(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 处理失败：可重试且有预算时放入延迟队列，否则记为最终失败
+     * @param input 操作的输入记录，创建时为null
+     * @param attempt 本次是第几次尝试
+     */
+    private void handleFailure(int index, BatchWaterMeterCreator.WaterMeterDevice input, int attempt,
+                               Throwable error) {
+        if (matches(error, errorClassifier::isRetryable) && retryPolicy.tryAcquireRetry(attempt)) {
+            long delay = retryPolicy.nextDelayMillis(attempt);
+            retryCount.increment();
+            retryQueue.offer(new RetryItem(index, input, attempt + 1, delay));
+            logger.debug("设备{}处理失败，{}ms后第{}次尝试: {}", index, delay, attempt + 1, error.getMessage());
+            return;
+        }
+
+        failedCount.increment();
+        logger.error("设备{}处理失败（已尝试{}次）: {}", index, attempt, error.getMessage());
+        if (failureWriter != null) {
+            try {
+                failureWriter.write(index, attempt, error.getMessage());
+            } catch (IOException e) {
+                logger.error("写入失败报告出错，设备{}", index, e);
+            }
+        }
+    }
+
+    private Thread startWriter() {
+        producing = true;
+        Thread writer = new Thread(this::drainResults, "provisioning-result-writer");
+        writer.start();
+        return writer;
+    }
+
+    private void stopWriter(Thread writer) throws InterruptedException {
+        producing = false;
+        writer.join();
+    }
+
+    /**
+     * 写线程：持续取出已完成批次写入日志和报告，并定期打印进度
+     */
+    private void drainResults() {
+        long startTime = System.currentTimeMillis();
+        long nextProgressLog = startTime + PROGRESS_LOG_INTERVAL_MS;
+
+        List<BatchWaterMeterCreator.WaterMeterDevice> rows = new ArrayList<>(DRAIN_MAX_ROWS);
+        while (true) {
+            // 读取producing须在poll之前，保证看到结束标志时队列中的结果都已可见
+            boolean finished = !producing;
+            List<BatchWaterMeterCreator.WaterMeterDevice> batch;
+            while (rows.size() < DRAIN_MAX_ROWS && (batch = completedBatches.poll()) != null) {
+                rows.addAll(batch);
+            }
+
+            if (!rows.isEmpty()) {
+                writeResults(rows);
+                rows.clear();
+            } else if (finished) {
+                break;
+            } else {
+                LockSupport.parkNanos(DRAIN_IDLE_NANOS);
+            }
+
+            long now = System.currentTimeMillis();
+            if (now >= nextProgressLog) {
+                long created = createdCount.sum();
+                logger.info("已创建{}个设备，失败{}个，重试{}次（待重试{}），速率{}/s，并发上限{}",
+                        created, failedCount.sum(), retryCount.sum(), retryQueue.size(),
+                        created * 1000 / Math.max(1, now - startTime), getConcurrencyLimit());
+                nextProgressLog = now + PROGRESS_LOG_INTERVAL_MS;
+            }
+        }
+    }
+
+    private void writeResults(List<BatchWaterMeterCreator.WaterMeterDevice> batch) {
+        try {
+            for (BatchWaterMeterCreator.WaterMeterDevice device : batch) {
+                journal.append(device);
+            }
+            reportWriter.writeBatch(batch);
+        } catch (IOException e) {
+            logger.error("写入创建日志或报告失败，首个设备序号: {}", batch.get(0).getIndex(), e);
+        }
+    }
+
+    /**
+     * 创建一批设备，序号范围[startIndex, endIndex)
+     */
+    private void createDeviceBatch(Step step, int batchNumber, int startIndex, int endIndex) {
+        logger.debug("开始创建第{}批设备，序号范围: {}-{}", batchNumber, startIndex, endIndex - 1);
+
+        List<BatchWaterMeterCreator.WaterMeterDevice> batchDevices = new ArrayList<>(endIndex - startIndex);
+        for (int index = startIndex; index < endIndex; index++) {
+            if (journal.isCompleted(index)) {
+                continue;
+            }
+            if (!execute(step, index, null, 1, batchDevices)) {
+                logger.warn("第{}批设备创建被中断", batchNumber);
+                break;
+            }
+        }
+
+        if (!batchDevices.isEmpty()) {
+            completedBatches.offer(batchDevices);
+        }
+
+        logger.debug("第{}批设备创建完成", batchNumber);
+    }
+
+    /**
+     * 处理一批指定的设备（到期的重试或批量操作的输入记录）
+     */
+    private void createRetryBatch(Step step, List<RetryItem> items) {
+        List<BatchWaterMeterCreator.WaterMeterDevice> batchDevices = new ArrayList<>(items.size());
+        for (RetryItem item : items) {
+            if (!execute(step, item.index, item.device, item.attempt, batchDevices)) {
+                logger.warn("批次被中断");
+                break;
+            }
+        }
+
+        if (!batchDevices.isEmpty()) {
+            completedBatches.offer(batchDevices);
+        }
+    }
+
+    /**
+     * 同步处理单个设备，成功结果放入批次缓冲区
+     * @return 线程被中断时返回false
+     */
+    private boolean execute(Step step, int index, BatchWaterMeterCreator.WaterMeterDevice input, int attempt,
+                            List<BatchWaterMeterCreator.WaterMeterDevice> batchDevices) {
+        long requestInterval = config.getRequestIntervalMillis();
+        long startNanos = 0;
+        try {
+            if (limiter != null) {
+                startNanos = limiter.acquire();
+            }
+            BatchWaterMeterCreator.WaterMeterDevice device;
+            try {
+                device = step.execute(index, input);
+            } catch (Exception e) {
+                if (limiter != null) {
+                    limiter.onFailure(startNanos, matches(e, errorClassifier::isOverload));
+                }
+                throw e;
+            }
+            if (limiter != null) {
+                limiter.onSuccess(startNanos);
+            }
+            batchDevices.add(device);
+            createdCount.increment();
+
+            // 避免请求过于频繁
+            if (requestInterval > 0) {
+                Thread.sleep(requestInterval);
+            }
+            return true;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            handleFailure(index, input, attempt, e);
+            return true;
+        }
+    }
+
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * 当前并发上限：启用自适应并发时为动态值，否则为固定配置
+     */
+    public int getConcurrencyLimit() {
+        if (limiter != null) {
+            return limiter.getLimit();
+        }
+        return "async".equals(config.getMode()) ? config.getAsyncWindow() : config.getThreadPoolSize();
+    }
+
+    /**
+     * 待处理的设备项，重试时放入延迟队列
+     */
+    private static class RetryItem implements Delayed {
+        private final int index;
+        private final BatchWaterMeterCreator.WaterMeterDevice device;
+        private final int attempt;
+        private final long dueNanos;
+
+        RetryItem(int index, BatchWaterMeterCreator.WaterMeterDevice device, int attempt, long delayMillis) {
+            this.index = index;
+            this.device = device;
+            this.attempt = attempt;
+            this.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((RetryItem) other).dueNanos);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.example.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * 设备创建日志（只追加）
+ * 每创建成功一个设备追加一行“序号,节点ID,设备ID,设备密钥”，按批次fsync落盘，
+ * 进程中断后重新运行时可以据此跳过已创建的设备
+ *
+ * 追加记录由单一写线程调用；isCompleted只读取启动时加载的记录，可被工作线程无锁并发调用
+ */
+public class ProvisioningJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProvisioningJournal.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // 启动时从日志加载的已创建设备，加载完成后只读
+    private final BitSet resumed = new BitSet();
+    private final int syncEvery;
+    private int unsynced;
+    private int appended;
+
+    private ProvisioningJournal(Path path, int syncEvery) throws IOException {
+        this.path = path;
+        this.syncEvery = syncEvery;
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 打开日志
+     * @param path 日志文件
+     * @param resume true时加载已有记录用于续跑；false时将旧日志改名保留并新建日志
+     * @param syncEvery 每追加多少条记录执行一次fsync
+     */
+    public static ProvisioningJournal open(Path path, boolean resume, int syncEvery) throws IOException {
+        if (Files.exists(path) && !resume) {
+            Path backup = path.resolveSibling(path.getFileName() + "." + System.currentTimeMillis());
+            Files.move(path, backup);
+            logger.info("未启用续跑，旧日志已改名为: {}", backup);
+        }
+
+        ProvisioningJournal journal = new ProvisioningJournal(path, syncEvery);
+        if (resume) {
+            journal.load();
+        }
+        return journal;
+    }
+
+    /**
+     * 加载已有记录
+     * 只有最后一行在没有换行结尾时视为进程中断未写完并截掉；中间格式错误的行跳过并告警，不影响其后的记录
+     */
+    private void load() throws IOException {
+        long fileLength = channel.size();
+        long validLength = 0;
+        int lineNumber = 0;
+        int malformed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                long lineLength = line.getBytes(StandardCharsets.UTF_8).length + 1;
+                // 没有换行结尾的最后一行视为未写完
+                if (validLength + lineLength > fileLength) {
+                    break;
+                }
+                validLength += lineLength;
+
+                JournalEntry entry = JournalEntry.parse(line);
+                if (entry == null) {
+                    malformed++;
+                    logger.warn("跳过格式错误的日志记录：第{}行", lineNumber);
+                    continue;
+                }
+                resumed.set(entry.getIndex());
+            }
+        }
+
+        if (validLength < fileLength) {
+            logger.warn("日志末尾存在不完整记录，截断至{}字节", validLength);
+            channel.truncate(validLength);
+        }
+        if (malformed > 0) {
+            logger.warn("日志{}中有{}行格式错误，已跳过", path, malformed);
+        }
+        logger.info("从日志{}恢复{}条已创建记录", path, resumed.cardinality());
+    }
+
+    /**
+     * 设备是否在之前的运行中已经创建过
+     */
+    public boolean isCompleted(int index) {
+        return resumed.get(index);
+    }
+
+    /**
+     * 已完成的设备数量（之前运行 + 本次运行）
+     */
+    public int completedCount() {
+        return resumed.cardinality() + appended;
+    }
+
+    /**
+     * 追加一条创建成功记录
+     */
+    public void append(BatchWaterMeterCreator.WaterMeterDevice device) throws IOException {
+        // 派生密钥模式下不保存密钥
+        String secret = device.getSecret() != null ? device.getSecret() : "";
+        byte[] line = new JournalEntry(device.getIndex(), device.getNodeId(), device.getDeviceId(), secret)
+                .toLine().getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < line.length) {
+            flushBuffer();
+        }
+        buffer.put(line);
+        appended++;
+
+        if (++unsynced >= syncEvery) {
+            sync();
+        }
+    }
+
+    /**
+     * 写出缓冲区并fsync
+     */
+    public void sync() throws IOException {
+        flushBuffer();
+        channel.force(false);
+        unsynced = 0;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            sync();
+            channel.close();
+        }
+    }
+
+    /**
+     * 日志记录
+     */
+    public static class JournalEntry {
+        private final int index;
+        private final String nodeId;
+        private final String deviceId;
+        private final String secret;
+
+        public JournalEntry(int index, String nodeId, String deviceId, String secret) {
+            this.index = index;
+            this.nodeId = nodeId;
+            this.deviceId = deviceId;
+            this.secret = secret;
+        }
+
+        /**
+         * 解析一行记录，格式不正确时返回null
+         */
+        public static JournalEntry parse(String line) {
+            String[] fields = line.split(",", -1);
+            if (fields.length != 4) {
+                return null;
+            }
+            try {
+                return new JournalEntry(Integer.parseInt(fields[0]), fields[1], fields[2], fields[3]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        String toLine() {
+            return index + "," + nodeId + "," + deviceId + "," + secret + "\n";
+        }
+
+        public int getIndex() { return index; }
+        public String getNodeId() { return nodeId; }
+        public String getDeviceId() { return deviceId; }
+        public String getSecret() { return secret; }
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.batch;
+
+/**
+ * 设备创建结果回调
+ */
+public interface ProvisioningListener {
+
+    /**
+     * 设备创建成功
+     */
+    void onDeviceCreated(BatchWaterMeterCreator.WaterMeterDevice device);
+
+    /**
+     * 设备创建失败
+     * @param index 设备序号
+     * @param nodeId 节点ID
+     * @param reason 失败原因
+     */
+    void onDeviceFailed(int index, String nodeId, String reason);
+}
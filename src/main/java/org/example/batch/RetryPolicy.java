@@ -0,0 +1,66 @@
+package org.example.batch;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 设备创建重试策略
+ * 指数退避 + 全抖动（在[0, min(最大延迟, 基础延迟 * 2^重试次数)]内随机取值），
+ * 并用全局重试预算限制总重试次数，避免故障期间重试放大请求量
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final AtomicLong remainingBudget;
+
+    /**
+     * @param maxAttempts 单个设备最多尝试次数（含首次）
+     * @param baseDelayMillis 首次重试的基础延迟
+     * @param maxDelayMillis 重试延迟上限
+     * @param retryBudget 整个运行允许的重试总次数
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, long retryBudget) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.remainingBudget = new AtomicLong(retryBudget);
+    }
+
+    /**
+     * 判断第attempt次尝试失败后能否重试，能重试时消耗一次预算
+     * @param attempt 已经尝试的次数，从1开始
+     */
+    public boolean tryAcquireRetry(int attempt) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        long remaining;
+        do {
+            remaining = remainingBudget.get();
+            if (remaining <= 0) {
+                return false;
+            }
+        } while (!remainingBudget.compareAndSet(remaining, remaining - 1));
+        return true;
+    }
+
+    /**
+     * 第attempt次尝试失败后的重试延迟
+     */
+    public long nextDelayMillis(int attempt) {
+        long ceiling = baseDelayMillis << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelayMillis) {
+            ceiling = maxDelayMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * 剩余重试预算
+     */
+    public long getRemainingBudget() {
+        return remainingBudget.get();
+    }
+}
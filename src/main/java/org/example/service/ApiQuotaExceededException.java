@@ -0,0 +1,11 @@
+package org.example.service;
+
+/**
+ * 客户端限流：等待配额超时，请求未发出
+ */
+public class ApiQuotaExceededException extends RuntimeException {
+
+    public ApiQuotaExceededException(String region, String apiClass) {
+        super("IoTDA接口配额不足：region=" + region + ", api=" + apiClass);
+    }
+}
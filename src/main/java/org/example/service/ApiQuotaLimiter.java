@@ -0,0 +1,175 @@
+package org.example.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按地域和接口类别的客户端限流
+ * 同一进程内所有IoTDA调用（命令下发、状态查询、批量注册）共用 {@link #shared()} 实例，
+ * 按账号在各地域的TPS配额分配速率，避免彼此触发服务端限流。地域统一使用华为云地域ID（例如cn-north-4），
+ * 服务内的地域名称需先经 {@link RegionShardingService#getRegionId} 转换，才能与批量注册共用同一个令牌桶。
+ *
+ * 每个（地域, 接口类别）一个GCRA令牌桶，状态只有一个AtomicLong（理论到达时间），CAS更新无锁；
+ * 桶容量的最后reserved个令牌只留给交互式请求，后台请求打满时交互式命令仍可立即发出
+ */
+public class ApiQuotaLimiter {
+
+    public enum ApiClass {
+        COMMAND, QUERY, PROVISIONING
+    }
+
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    private static final ApiQuotaLimiter SHARED = new ApiQuotaLimiter(10_000);
+
+    private final long maxWaitNanos;
+    private final AtomicReferenceArray<Quota> quotas = new AtomicReferenceArray<>(ApiClass.values().length);
+    // 地域|接口类别 -> 令牌桶
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * @param maxWaitMillis acquire最长等待时间
+     */
+    public ApiQuotaLimiter(long maxWaitMillis) {
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        configure(ApiClass.COMMAND, 50, 100, 20);
+        configure(ApiClass.QUERY, 100, 200, 20);
+        configure(ApiClass.PROVISIONING, 50, 50, 0);
+    }
+
+    /**
+     * 进程内共享实例
+     */
+    public static ApiQuotaLimiter shared() {
+        return SHARED;
+    }
+
+    /**
+     * 设置接口类别的配额，对所有地域生效，已创建的令牌桶下次请求时使用新配额
+     * @param ratePerSecond 持续速率
+     * @param burst 桶容量，即空闲后允许的突发请求数
+     * @param reserved 桶容量中只留给交互式请求的令牌数
+     */
+    public void configure(ApiClass api, double ratePerSecond, int burst, int reserved) {
+        quotas.set(api.ordinal(), new Quota(ratePerSecond, burst, Math.min(reserved, burst - 1)));
+    }
+
+    /**
+     * 获取一次调用许可，不等待
+     */
+    public boolean tryAcquire(String region, ApiClass api, Priority priority) {
+        return bucket(region, api).tryAcquire(priority, System.nanoTime()) == 0;
+    }
+
+    /**
+     * 获取一次调用许可，配额不足时等待
+     * @throws ApiQuotaExceededException 超过最长等待时间或等待被中断
+     */
+    public void acquire(String region, ApiClass api, Priority priority) {
+        Bucket bucket = bucket(region, api);
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (true) {
+            long now = System.nanoTime();
+            long waitNanos = bucket.tryAcquire(priority, now);
+            if (waitNanos == 0) {
+                return;
+            }
+            if (now + waitNanos > deadline || Thread.currentThread().isInterrupted()) {
+                throttled.increment();
+                throw new ApiQuotaExceededException(region, api.name());
+            }
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+
+    /**
+     * 异步获取一次调用许可，配额不足时延后到可用时刻再完成，等待期间不占用调用线程
+     * @return 获得许可时完成；超过最长等待时间时以 {@link ApiQuotaExceededException} 结束
+     */
+    public CompletableFuture<Void> acquireAsync(String region, ApiClass api, Priority priority) {
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        acquireLater(bucket(region, api), region, api, priority, System.nanoTime() + maxWaitNanos, permit);
+        return permit;
+    }
+
+    private void acquireLater(Bucket bucket, String region, ApiClass api, Priority priority, long deadline,
+                              CompletableFuture<Void> permit) {
+        long now = System.nanoTime();
+        long waitNanos = bucket.tryAcquire(priority, now);
+        if (waitNanos == 0) {
+            permit.complete(null);
+            return;
+        }
+        if (now + waitNanos > deadline) {
+            throttled.increment();
+            permit.completeExceptionally(new ApiQuotaExceededException(region, api.name()));
+            return;
+        }
+        CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS)
+                .execute(() -> acquireLater(bucket, region, api, priority, deadline, permit));
+    }
+
+    /**
+     * 因等待超时被拒绝的调用数
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    private Bucket bucket(String region, ApiClass api) {
+        return buckets.computeIfAbsent(region + "|" + api.name(), key -> new Bucket(api));
+    }
+
+    private static class Quota {
+        // 每个令牌的间隔
+        private final long intervalNanos;
+        // 交互式/后台请求允许的最大提前量
+        private final long interactiveToleranceNanos;
+        private final long backgroundToleranceNanos;
+
+        Quota(double ratePerSecond, int burst, int reserved) {
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+            this.interactiveToleranceNanos = intervalNanos * (burst - 1);
+            this.backgroundToleranceNanos = intervalNanos * (burst - 1 - reserved);
+        }
+    }
+
+    private class Bucket {
+        private final ApiClass api;
+        // 理论到达时间：按持续速率，下一个请求最早应在此时刻发出
+        private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+        Bucket(ApiClass api) {
+            this.api = api;
+        }
+
+        /**
+         * @return 0表示已获得许可，否则为需要等待的纳秒数
+         */
+        long tryAcquire(Priority priority, long now) {
+            Quota quota = quotas.get(api.ordinal());
+            long tolerance = priority == Priority.INTERACTIVE
+                    ? quota.interactiveToleranceNanos : quota.backgroundToleranceNanos;
+            while (true) {
+                long tat = theoreticalArrival.get();
+                long start = Math.max(tat, now);
+                long ahead = start - now;
+                if (ahead > tolerance) {
+                    return ahead - tolerance;
+                }
+                if (theoreticalArrival.compareAndSet(tat, start + quota.intervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+    }
+}
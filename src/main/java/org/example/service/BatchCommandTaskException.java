@@ -0,0 +1,25 @@
+package org.example.service;
+
+/**
+ * 批量命令任务中单台设备的命令未成功
+ * outcomeUnknown为true表示任务在等待时间内未结束或明细中没有该设备，命令可能仍会送达设备，不能再逐条重发
+ */
+public class BatchCommandTaskException extends RuntimeException {
+
+    private final String taskId;
+    private final boolean outcomeUnknown;
+
+    public BatchCommandTaskException(String taskId, String message, boolean outcomeUnknown) {
+        super(message + "：" + taskId);
+        this.taskId = taskId;
+        this.outcomeUnknown = outcomeUnknown;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public boolean isOutcomeUnknown() {
+        return outcomeUnknown;
+    }
+}
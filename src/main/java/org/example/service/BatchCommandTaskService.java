@@ -0,0 +1,341 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.batch.BatchTaskGateway;
+import org.example.batch.IoTDABatchTaskGateway;
+import org.example.template.DeviceCommandTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 批量命令任务
+ * 同一地域内命令类型和参数完全相同的命令合并为IoTDA批量任务（createCommands）下发，
+ * 一个任务覆盖数千台设备。任务状态由后台线程定时轮询，同一地域的任务一次查询，
+ * 任务结束后分页读取每台设备的执行结果并完成对应的future，提交方不必等待任务结束。
+ * 任务的创建、状态查询和明细分页复用 {@link IoTDABatchTaskGateway}
+ */
+@Service
+public class BatchCommandTaskService {
+
+    private static final String SERVICE_ID = "WaterMeter";
+
+    private final IoTDAClientPool clientPool;
+    private final RegionShardingService shardingService;
+    private final RegionCircuitBreaker circuitBreaker;
+    private final ApiQuotaLimiter quotaLimiter;
+    private final CommandIdempotencyGuard idempotencyGuard;
+    private final CommandResultTracker commandTracker;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final int threshold;
+    private final int maxTargetsPerTask;
+    private final long timeoutMillis;
+
+    // 未结束的任务，由轮询线程处理
+    private final Queue<PendingTask> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService poller;
+
+    /**
+     * @param threshold 相同命令达到多少条时改用批量任务
+     * @param maxTargetsPerTask 单个批量任务的设备数上限
+     * @param pollIntervalMillis 任务状态轮询间隔
+     * @param timeoutMillis 任务最长等待时间，超过后未返回结果的设备记为结果未知
+     */
+    public BatchCommandTaskService(IoTDAClientPool clientPool, RegionShardingService shardingService,
+                                   RegionCircuitBreaker circuitBreaker, ApiQuotaLimiter quotaLimiter,
+                                   CommandIdempotencyGuard idempotencyGuard, CommandResultTracker commandTracker,
+                                   @Value("${iotda.command.batch-task-threshold:20}") int threshold,
+                                   @Value("${iotda.command.batch-task-max-targets:5000}") int maxTargetsPerTask,
+                                   @Value("${iotda.command.batch-task-poll-ms:2000}") long pollIntervalMillis,
+                                   @Value("${iotda.command.batch-task-timeout-ms:600000}") long timeoutMillis) {
+        this.clientPool = clientPool;
+        this.shardingService = shardingService;
+        this.circuitBreaker = circuitBreaker;
+        this.quotaLimiter = quotaLimiter;
+        this.idempotencyGuard = idempotencyGuard;
+        this.commandTracker = commandTracker;
+        this.threshold = threshold;
+        this.maxTargetsPerTask = maxTargetsPerTask;
+        this.timeoutMillis = timeoutMillis;
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "batch-command-task-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::pollTasks, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 将达到阈值的相同命令合并为批量任务提交，不等待任务结束
+     * 命令先在幂等保护中登记，有效期内已发送过的命令不放入任务；
+     * 成功的设备返回SUCCESSFUL响应并将结果记录到 {@link CommandResultTracker}，失败时future以异常结束：
+     * 任务创建失败为原始异常，任务中的设备失败或结果未知为 {@link BatchCommandTaskException}
+     * @return 已放入任务的命令在输入列表中的位置 -> 结果；不在结果中的命令由调用方逐条发送
+     */
+    public Map<Integer, CompletableFuture<CommandResponse>> submitIdenticalCommands(
+            List<DeviceCommandTemplate> commands) {
+        Map<Integer, CompletableFuture<CommandResponse>> results = new HashMap<>();
+
+        for (List<Integer> group : groupIdenticalCommands(commands).values()) {
+            if (group.size() < threshold) {
+                continue;
+            }
+            for (int from = 0; from < group.size(); from += maxTargetsPerTask) {
+                List<Integer> chunk = group.subList(from, Math.min(from + maxTargetsPerTask, group.size()));
+                submitTask(commands, chunk, results);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 按“地域|命令类型|参数JSON”分组，保持输入顺序；
+     * 本批中出现多次的设备不参与合并，由调用方逐条发送以保证同一设备的命令顺序；
+     * 参数无法序列化的命令无法判断是否相同，也不参与合并
+     */
+    private Map<String, List<Integer>> groupIdenticalCommands(List<DeviceCommandTemplate> commands) {
+        Map<String, Integer> deviceCounts = new HashMap<>(commands.size() * 2);
+        for (DeviceCommandTemplate command : commands) {
+            deviceCounts.merge(command.getDeviceId(), 1, Integer::sum);
+        }
+
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < commands.size(); i++) {
+            DeviceCommandTemplate command = commands.get(i);
+            if (deviceCounts.get(command.getDeviceId()) > 1) {
+                continue;
+            }
+            String region = shardingService.getRegionShard(command.getRegion()).getRegion();
+            String parameters = toJson(command.getParameters());
+            if (parameters == null) {
+                continue;
+            }
+            String key = region + "|" + command.getCommandType() + "|" + parameters;
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    /**
+     * 登记并提交一个任务，结果future放入results
+     */
+    private void submitTask(List<DeviceCommandTemplate> commands, List<Integer> chunk,
+                            Map<Integer, CompletableFuture<CommandResponse>> results) {
+        DeviceCommandTemplate template = commands.get(chunk.get(0));
+        ShardInfo shard = shardingService.getShardByRegion(template.getDeviceId(), template.getRegion());
+
+        Map<String, CompletableFuture<CommandResponse>> futures = new LinkedHashMap<>(chunk.size() * 2);
+        for (Integer position : chunk) {
+            DeviceCommandTemplate command = commands.get(position);
+            // 有效期内已发送过的命令留给调用方，经幂等保护复用已有结果
+            CompletableFuture<CommandResponse> future = idempotencyGuard.reserve(command);
+            if (future != null) {
+                futures.put(command.getDeviceId(), future);
+                results.put(position, future);
+            }
+        }
+        if (futures.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> document = new HashMap<>();
+        document.put("service_id", SERVICE_ID);
+        document.put("command_name", template.getCommandType());
+        document.put("paras", template.getParameters());
+
+        IoTDABatchTaskGateway gateway = new IoTDABatchTaskGateway(clientPool.getClient(shard),
+                IoTDABatchTaskGateway.TASK_TYPE_CREATE_COMMANDS);
+        List<String> targets = new ArrayList<>(futures.keySet());
+        String taskName = String.format("%s_%d_%d", template.getCommandType(), System.currentTimeMillis(), chunk.get(0));
+        String taskId;
+        try {
+            circuitBreaker.checkAvailable(shard.getRegion());
+            quotaLimiter.acquire(shardingService.getRegionId(shard.getRegion()), ApiQuotaLimiter.ApiClass.COMMAND,
+                    ApiQuotaLimiter.Priority.BACKGROUND);
+            taskId = circuitBreaker.execute(shard.getRegion(),
+                    () -> gateway.createCommandTask(taskName, targets, document));
+        } catch (RuntimeException e) {
+            log.error("创建批量命令任务失败：commandType={}, 设备数={}, error={}",
+                    template.getCommandType(), targets.size(), e.getMessage());
+            futures.values().forEach(future -> future.completeExceptionally(e));
+            return;
+        }
+
+        log.info("批量命令任务已提交：taskId={}, commandType={}, region={}, 设备数={}",
+                taskId, template.getCommandType(), shard.getRegion(), targets.size());
+        long submittedMillis = System.currentTimeMillis();
+        pendingTasks.add(new PendingTask(taskId, shard, gateway, futures,
+                submittedMillis, submittedMillis + timeoutMillis));
+    }
+
+    /**
+     * 轮询一轮：同一地域的任务一次查询状态；单个任务读取明细失败不影响其他任务，留到下一轮。
+     * 查询同样经过熔断器并占用地域查询配额，地域熔断或配额不足时本轮跳过，不等待
+     */
+    private void pollTasks() {
+        if (pendingTasks.isEmpty()) {
+            return;
+        }
+        Map<String, List<PendingTask>> byRegion = new HashMap<>();
+        for (PendingTask task : pendingTasks) {
+            byRegion.computeIfAbsent(task.shard.getRegion(), k -> new ArrayList<>()).add(task);
+        }
+
+        long now = System.currentTimeMillis();
+        byRegion.forEach((region, tasks) -> {
+            Map<String, String> statuses;
+            try {
+                List<String> taskIds = new ArrayList<>(tasks.size());
+                tasks.forEach(task -> taskIds.add(task.taskId));
+                BatchTaskGateway gateway = tasks.get(0).gateway;
+                statuses = callPolling(region, () -> gateway.listTaskStatuses(taskIds));
+            } catch (RuntimeException e) {
+                log.warn("查询批量命令任务状态失败：region={}, 任务数={}, error={}", region, tasks.size(), e.getMessage());
+                statuses = Map.of();
+            }
+
+            for (PendingTask task : tasks) {
+                String status = statuses.get(task.taskId);
+                try {
+                    if (BatchTaskGateway.isTerminalStatus(status)) {
+                        log.info("批量命令任务已结束：taskId={}, status={}", task.taskId, status);
+                        collectResults(task);
+                        pendingTasks.remove(task);
+                        continue;
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("读取批量命令任务结果失败：taskId={}, error={}", task.taskId, e.getMessage());
+                }
+                if (now > task.deadline) {
+                    log.error("等待批量命令任务超时：taskId={}, 未返回结果设备数={}", task.taskId, task.futures.size());
+                    failRemaining(task, "批量命令任务未完成");
+                    pendingTasks.remove(task);
+                }
+            }
+        });
+    }
+
+    /**
+     * 分页读取任务明细，逐台设备完成future；明细中没有出现的设备记为结果未知
+     */
+    private void collectResults(PendingTask task) {
+        String marker = null;
+        do {
+            String pageMarker = marker;
+            BatchTaskGateway.TaskDetailPage page = callPolling(task.shard.getRegion(),
+                    () -> task.gateway.showTaskDetails(task.taskId, pageMarker));
+            for (BatchTaskGateway.DeviceTaskResult result : page.getResults()) {
+                CompletableFuture<CommandResponse> future = task.futures.remove(result.getDeviceId());
+                if (future == null) {
+                    continue;
+                }
+                if (result.isSuccess()) {
+                    future.complete(toCommandResponse(task, result));
+                } else {
+                    future.completeExceptionally(new BatchCommandTaskException(task.taskId,
+                            "批量命令任务中设备执行失败（" + result.getErrorMessage() + "）", false));
+                }
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+
+        failRemaining(task, "批量命令任务未返回该设备结果");
+    }
+
+    /**
+     * 轮询用的查询调用：只尝试获取配额，拿不到时抛出 {@link ApiQuotaExceededException}，由调用方留到下一轮
+     */
+    private <T> T callPolling(String region, Supplier<T> call) {
+        circuitBreaker.checkAvailable(region);
+        String regionId = shardingService.getRegionId(region);
+        if (!quotaLimiter.tryAcquire(regionId, ApiQuotaLimiter.ApiClass.QUERY, ApiQuotaLimiter.Priority.BACKGROUND)) {
+            throw new ApiQuotaExceededException(regionId, ApiQuotaLimiter.ApiClass.QUERY.name());
+        }
+        return circuitBreaker.execute(region, call);
+    }
+
+    private void failRemaining(PendingTask task, String reason) {
+        task.futures.values().forEach(future ->
+                future.completeExceptionally(new BatchCommandTaskException(task.taskId, reason, true)));
+        task.futures.clear();
+    }
+
+    /**
+     * 与逐条发送一致：任务中的命令是同步命令，子任务成功即设备已应答，结果直接记录到 {@link CommandResultTracker}
+     */
+    private CommandResponse toCommandResponse(PendingTask task, BatchTaskGateway.DeviceTaskResult result) {
+        String commandId = result.getCommandId() != null ? result.getCommandId() : task.taskId;
+        if (result.getCommandId() != null) {
+            commandTracker.record(commandId, result.getDeviceId(), "SUCCESSFUL", null,
+                    System.currentTimeMillis() - task.submittedMillis);
+        }
+        return CommandResponse.builder()
+                .commandId(commandId)
+                .status("SUCCESSFUL")
+                .region(task.shard.getRegion())
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+
+    /**
+     * 未结束的任务数
+     */
+    public int getPendingTaskCount() {
+        return pendingTasks.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        for (Iterator<PendingTask> it = pendingTasks.iterator(); it.hasNext(); ) {
+            failRemaining(it.next(), "服务停止，批量命令任务结果未知");
+            it.remove();
+        }
+    }
+
+    /**
+     * @return 无法序列化时返回null
+     */
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            log.warn("命令参数无法序列化，不参与合并：error={}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static class PendingTask {
+        private final String taskId;
+        private final ShardInfo shard;
+        private final IoTDABatchTaskGateway gateway;
+        // 设备ID -> 尚未得到结果的命令
+        private final Map<String, CompletableFuture<CommandResponse>> futures;
+        private final long submittedMillis;
+        private final long deadline;
+
+        PendingTask(String taskId, ShardInfo shard, IoTDABatchTaskGateway gateway,
+                    Map<String, CompletableFuture<CommandResponse>> futures, long submittedMillis, long deadline) {
+            this.taskId = taskId;
+            this.shard = shard;
+            this.gateway = gateway;
+            this.futures = new ConcurrentHashMap<>(futures);
+            this.submittedMillis = submittedMillis;
+            this.deadline = deadline;
+        }
+    }
+}
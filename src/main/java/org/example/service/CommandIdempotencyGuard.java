@@ -0,0 +1,247 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.template.DeviceCommandTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 命令幂等保护
+ * 以调用方提供的幂等键，或 (设备ID, 命令类型, 参数) 的摘要作为键，记录最近发送的命令；
+ * 有效期内的重复命令不再调用IoTDA，直接返回首次发送的结果，正在发送时等待其结果。
+ * 发送失败的命令会立即移出记录，上层重试时可以正常重发。
+ * 按内容摘要去重时只与该设备最近一次的命令比较：设备之后发送过其他命令时，
+ * 旧命令的记录立即移出，例如 关→开→关 中的第二次关闭会正常下发。
+ * 没有幂等键且参数无法序列化的命令无法判断是否相同，不做去重，直接发送
+ */
+@Service
+public class CommandIdempotencyGuard {
+
+    // 调用方提供的幂等键的前缀，其余为内容摘要
+    private static final String EXPLICIT_KEY_PREFIX = "key:";
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 幂等键 -> 最近一次发送，按插入顺序淘汰最早的记录
+    private final LinkedHashMap<String, Entry> recent;
+
+    // 设备ID -> 该设备最近一次登记的幂等键，与recent同锁
+    private final Map<String, String> lastKeyByDevice = new HashMap<>();
+
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * @param ttlMillis 记录的有效时间
+     * @param maxEntries 最多记录的命令数
+     */
+    public CommandIdempotencyGuard(@Value("${iotda.command.idempotency-ttl-ms:60000}") long ttlMillis,
+                                   @Value("${iotda.command.idempotency-max-entries:100000}") int maxEntries) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        this.recent = new LinkedHashMap<String, Entry>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= CommandIdempotencyGuard.this.maxEntries) {
+                    return false;
+                }
+                lastKeyByDevice.remove(eldest.getValue().deviceId, eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * 发送命令；有效期内已发送过或正在发送的相同命令直接返回其结果，正在发送时在调用线程上等待
+     */
+    public CommandResponse execute(DeviceCommandTemplate command,
+                                   Function<DeviceCommandTemplate, CommandResponse> sender) {
+        return join(executeAsync(command, c -> CompletableFuture.completedFuture(sender.apply(c))));
+    }
+
+    /**
+     * 异步发送命令；有效期内已发送过或正在发送的相同命令返回跟随首次结果的future，不占用调用线程等待
+     * @param sender 异步发送方式，抛出的异常与返回的失败future同样处理
+     */
+    public CompletableFuture<CommandResponse> executeAsync(
+            DeviceCommandTemplate command,
+            Function<DeviceCommandTemplate, CompletableFuture<CommandResponse>> sender) {
+        String key = keyOf(command);
+        if (key == null) {
+            return send(command, sender);
+        }
+        CompletableFuture<CommandResponse> future = new CompletableFuture<>();
+        Entry existing = putIfAbsent(key, command.getDeviceId(), future);
+
+        if (existing != null) {
+            duplicates.increment();
+            log.info("重复命令，复用已发送结果：deviceId={}, commandType={}",
+                    command.getDeviceId(), command.getCommandType());
+            // 返回副本，调用方不能完成共享的记录
+            return existing.future.thenApply(Function.identity());
+        }
+
+        send(command, sender).whenComplete((response, e) -> {
+            // 先移出记录再通知等待方，等待方重试时不会再拿到这次失败
+            if (e != null || !response.isSuccess()) {
+                forget(key, future);
+            }
+            if (e != null) {
+                future.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause() : e);
+            } else {
+                future.complete(response);
+            }
+        });
+        return future;
+    }
+
+    private static CompletableFuture<CommandResponse> send(
+            DeviceCommandTemplate command,
+            Function<DeviceCommandTemplate, CompletableFuture<CommandResponse>> sender) {
+        try {
+            return sender.apply(command);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 登记一条由其他途径（例如批量命令任务）发送的命令，之后的重复命令等待并复用其结果
+     * @return 登记成功时返回结果future，发送方须在得到结果后完成它，失败结果会移出记录；
+     *         有效期内已有相同命令或命令无法去重时返回null，该命令应改走 {@link #execute}
+     */
+    public CompletableFuture<CommandResponse> reserve(DeviceCommandTemplate command) {
+        String key = keyOf(command);
+        if (key == null) {
+            return null;
+        }
+        CompletableFuture<CommandResponse> future = new CompletableFuture<>();
+        if (putIfAbsent(key, command.getDeviceId(), future) != null) {
+            return null;
+        }
+        future.whenComplete((response, e) -> {
+            if (e != null || !response.isSuccess()) {
+                forget(key, future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 记录不存在或已过期时放入新记录，并移出该设备上一条不同的内容摘要记录
+     * @return 有效期内的已有记录，没有时返回null
+     */
+    private Entry putIfAbsent(String key, String deviceId, CompletableFuture<CommandResponse> future) {
+        long now = System.nanoTime();
+        synchronized (recent) {
+            Entry existing = recent.get(key);
+            if (existing != null && now - existing.createdNanos >= ttlNanos) {
+                remove(key, existing);
+                existing = null;
+            }
+            if (existing != null) {
+                return existing;
+            }
+
+            String previous = lastKeyByDevice.put(deviceId, key);
+            if (previous != null && !previous.equals(key) && !previous.startsWith(EXPLICIT_KEY_PREFIX)) {
+                // 设备已改发其他命令，之前按内容去重的命令不再算重复
+                recent.remove(previous);
+            }
+            recent.put(key, new Entry(future, now, deviceId));
+            return null;
+        }
+    }
+
+    /**
+     * 移出记录，调用方需持有recent的锁
+     */
+    private void remove(String key, Entry entry) {
+        recent.remove(key);
+        lastKeyByDevice.remove(entry.deviceId, key);
+    }
+
+    /**
+     * 调用方提供幂等键时直接使用，否则对设备ID、命令类型和参数JSON取SHA-256摘要
+     * @return 参数无法序列化时返回null，表示不去重
+     */
+    String keyOf(DeviceCommandTemplate command) {
+        if (command.getIdempotencyKey() != null && !command.getIdempotencyKey().isEmpty()) {
+            return EXPLICIT_KEY_PREFIX + command.getIdempotencyKey();
+        }
+        String parameters;
+        try {
+            parameters = objectMapper.writeValueAsString(command.getParameters());
+        } catch (JsonProcessingException e) {
+            log.warn("命令参数无法序列化，不做去重：deviceId={}, commandType={}, error={}",
+                    command.getDeviceId(), command.getCommandType(), e.getMessage());
+            return null;
+        }
+        String content = command.getDeviceId() + "|" + command.getCommandType() + "|" + parameters;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder("sha:");
+            for (byte b : digest.digest(content.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return content;
+        }
+    }
+
+    /**
+     * 被判定为重复而未发送的命令数
+     */
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    public int size() {
+        synchronized (recent) {
+            return recent.size();
+        }
+    }
+
+    private void forget(String key, CompletableFuture<CommandResponse> future) {
+        synchronized (recent) {
+            Entry entry = recent.get(key);
+            if (entry != null && entry.future == future) {
+                remove(key, entry);
+            }
+        }
+    }
+
+    private static CommandResponse join(CompletableFuture<CommandResponse> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private static class Entry {
+        private final CompletableFuture<CommandResponse> future;
+        private final long createdNanos;
+        private final String deviceId;
+
+        Entry(CompletableFuture<CommandResponse> future, long createdNanos, String deviceId) {
+            this.future = future;
+            this.createdNanos = createdNanos;
+            this.deviceId = deviceId;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 命令结果记录
+ * 命令通过同步的CreateCommand接口（逐条发送和批量命令任务）下发，接口返回时设备已应答，结果已经确定，
+ * 由发送方直接记录，不需要再登记待定命令、匹配MQTT命令状态事件或轮询。
+ * 保留最近completedCapacity条结果，可按commandId查询，也可订阅所有命令的结果
+ */
+@Service
+public class CommandResultTracker {
+
+    private final int completedCapacity;
+
+    // commandId -> 最近的结果，按记录顺序淘汰最早的
+    private final LinkedHashMap<String, CommandResult> completed;
+    private final List<Consumer<CommandResult>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param completedCapacity 保留的结果数
+     */
+    public CommandResultTracker(@Value("${iotda.command-tracker.completed-capacity:10000}") int completedCapacity) {
+        this.completedCapacity = completedCapacity;
+        this.completed = new LinkedHashMap<String, CommandResult>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CommandResult> eldest) {
+                return size() > CommandResultTracker.this.completedCapacity;
+            }
+        };
+    }
+
+    /**
+     * 记录命令结果（同步命令的设备应答），并通知订阅者
+     * @return 记录的结果
+     */
+    public CommandResult record(String commandId, String deviceId, String status, String result,
+                                long elapsedMillis) {
+        CommandResult commandResult = new CommandResult(commandId, deviceId, status, result, elapsedMillis);
+        synchronized (completed) {
+            completed.put(commandId, commandResult);
+        }
+        for (Consumer<CommandResult> listener : listeners) {
+            try {
+                listener.accept(commandResult);
+            } catch (RuntimeException e) {
+                log.error("命令结果回调失败：commandId={}", commandId, e);
+            }
+        }
+        return commandResult;
+    }
+
+    /**
+     * 获取命令结果，未记录或已淘汰的命令返回null
+     */
+    public CommandResult getResult(String commandId) {
+        synchronized (completed) {
+            return completed.get(commandId);
+        }
+    }
+
+    /**
+     * 订阅所有命令的结果，回调在发送命令的线程上执行
+     */
+    public void addListener(Consumer<CommandResult> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 命令结果
+     */
+    public static class CommandResult {
+        private final String commandId;
+        private final String deviceId;
+        private final String status;
+        private final String result;
+        private final long elapsedMillis;
+
+        CommandResult(String commandId, String deviceId, String status, String result, long elapsedMillis) {
+            this.commandId = commandId;
+            this.deviceId = deviceId;
+            this.status = status;
+            this.result = result;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String getCommandId() {
+            return commandId;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        /**
+         * SUCCESSFUL/FAILED
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * 设备返回的结果JSON，未知时为null
+         */
+        public String getResult() {
+            return result;
+        }
+
+        /**
+         * 从下发到得到结果的耗时
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSuccess() {
+            return "SUCCESSFUL".equals(status);
+        }
+    }
+}
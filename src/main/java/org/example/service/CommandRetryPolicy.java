@@ -0,0 +1,22 @@
+package org.example.service;
+
+import org.example.template.DeviceCommandTemplate;
+
+/**
+ * 异步命令的重试策略
+ * 重试在命令所在设备的发送顺序内进行，重试结束前该设备之后的命令不会发送
+ */
+@FunctionalInterface
+public interface CommandRetryPolicy {
+
+    /**
+     * 不重试
+     */
+    CommandRetryPolicy NONE = (command, attempt, error) -> -1;
+
+    /**
+     * @param attempt 刚失败的是第几次尝试（从1开始）
+     * @return 等待多少毫秒后重试，小于0表示不再重试
+     */
+    long retryDelayMillis(DeviceCommandTemplate command, int attempt, Throwable error);
+}
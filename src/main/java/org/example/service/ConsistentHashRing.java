@@ -0,0 +1,102 @@
+package org.example.service;
+
+import java.util.Arrays;
+
+/**
+ * 一致性哈希环
+ * 每个分片在环上放置virtualNodes个虚拟节点，设备ID哈希到环上后顺时针找到的第一个虚拟节点即所属分片；
+ * 分片数由N变为N+1时只有约1/(N+1)的设备改变分片。
+ * 环创建后不可变，虚拟节点位置和所属分片分别存放在有序long[]和int[]中，查找为二分查找，不分配对象
+ */
+public final class ConsistentHashRing {
+
+    // FNV-1a 64位参数
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int shardCount;
+    // 虚拟节点在环上的位置，升序
+    private final long[] points;
+    // 与points对应的分片序号
+    private final int[] shards;
+
+    /**
+     * @param name 环的名称，参与虚拟节点位置计算，不同地域的环互不相同
+     * @param shardCount 分片数
+     * @param virtualNodes 每个分片的虚拟节点数，越多分布越均匀
+     */
+    public ConsistentHashRing(String name, int shardCount, int virtualNodes) {
+        if (shardCount <= 0 || virtualNodes <= 0) {
+            throw new IllegalArgumentException("分片数和虚拟节点数必须为正数");
+        }
+        this.shardCount = shardCount;
+
+        int size = shardCount * virtualNodes;
+        long[] keys = new long[size];
+        int n = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                // 位置只取决于(名称, 分片, 虚拟节点)，新增分片不影响已有分片的节点位置
+                keys[n++] = hash64(name + "#" + shard + "#" + v);
+            }
+        }
+
+        // 按位置排序并同步排列分片序号：先对下标排序，再按下标取值
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        this.points = new long[size];
+        this.shards = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = keys[order[i]];
+            shards[i] = order[i] / virtualNodes;
+        }
+    }
+
+    /**
+     * 设备所属分片序号
+     */
+    public int shardOf(String key) {
+        return shardOfHash(hash64(key));
+    }
+
+    /**
+     * 按哈希值查找分片
+     */
+    public int shardOfHash(long hash) {
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == points.length) {
+                // 超过最大位置时绕回环的起点
+                index = 0;
+            }
+        }
+        return shards[index];
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * 64位字符串哈希：逐字符FNV-1a，再经MurmurHash3的fmix64混合，使相近的设备ID在环上也充分分散
+     */
+    public static long hash64(String key) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0, length = key.length(); i < length; i++) {
+            char c = key.charAt(i);
+            h = (h ^ (c & 0xff)) * FNV_PRIME;
+            h = (h ^ (c >>> 8)) * FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,316 @@
+package org.example.service;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 按设备保序的命令调度器
+ * 每台设备一个待执行队列，同一设备同一时间只执行一个任务，同一优先级内按提交顺序执行；
+ * 不同设备由工作线程并行执行，每执行完一个任务就把设备放回就绪队列，避免单台设备占住线程
+ *
+ * 优先级通道：URGENT任务在同一设备内排在尚未执行的NORMAL任务之前，
+ * 有URGENT任务的设备也优先于其他设备被调度
+ *
+ * 异步任务（submitAsync）在返回的future完成前一直占住设备，期间不占用工作线程，
+ * 用于在设备的发送顺序内完成退避重试，之后提交的任务不会越过正在重试的任务
+ *
+ * 工作线程空闲超过keepAlive后回收，有任务时再按需创建
+ */
+public class DeviceOrderedScheduler {
+
+    public enum Priority {
+        URGENT, NORMAL
+    }
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final String name;
+    private final Semaphore capacity;
+    private final Map<String, DeviceQueue> queues = new ConcurrentHashMap<>();
+    private final PriorityBlockingQueue<ReadyDevice> ready = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadPoolExecutor workers;
+    private volatile boolean shutdown;
+
+    /**
+     * @param workerCount 工作线程数，即最多同时执行的设备数
+     * @param maxPending 排队任务数上限，达到上限时submit阻塞
+     */
+    public DeviceOrderedScheduler(String name, int workerCount, int maxPending) {
+        this.name = name;
+        this.capacity = new Semaphore(maxPending);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交任务，返回任务结果；队列已满时阻塞等待，调度器已停止时future以异常结束
+     */
+    public <T> CompletableFuture<T> submit(String deviceId, Priority priority, Supplier<T> task) {
+        return submitAsync(deviceId, priority, () -> CompletableFuture.completedFuture(task.get()));
+    }
+
+    /**
+     * 提交异步任务，设备在任务返回的future完成后才执行下一个任务；队列已满时阻塞等待
+     */
+    public <T> CompletableFuture<T> submitAsync(String deviceId, Priority priority,
+                                                Supplier<? extends CompletionStage<T>> task) {
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return enqueue(deviceId, priority, task);
+    }
+
+    /**
+     * 提交异步任务，不等待：队列已满时返回的future立即以 {@link RejectedExecutionException} 结束
+     */
+    public <T> CompletableFuture<T> trySubmitAsync(String deviceId, Priority priority,
+                                                   Supplier<? extends CompletionStage<T>> task) {
+        if (!capacity.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("命令调度器队列已满：" + name));
+        }
+        return enqueue(deviceId, priority, task);
+    }
+
+    /**
+     * 延迟后在工作线程上执行，不占用调用线程；调度器已停止时future以异常结束。
+     * 异步任务在其中重试时，设备仍被该任务占住
+     */
+    public <T> CompletableFuture<T> runLater(long delayMillis, Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Executor delayed = CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, runnable -> {
+            try {
+                workers.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        delayed.execute(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 在工作线程上执行的Executor，调度器停止后拒绝执行。
+     * 异步任务中等待其他future（例如配额）后需要继续执行阻塞调用时使用，避免在完成该future的线程上执行
+     */
+    public Executor executor() {
+        return workers;
+    }
+
+    /**
+     * 放入设备队列，调用方已取得一个排队名额
+     */
+    private <T> CompletableFuture<T> enqueue(String deviceId, Priority priority,
+                                             Supplier<? extends CompletionStage<T>> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Task<T> queued = new Task<>(task, future);
+        while (true) {
+            DeviceQueue queue = queues.computeIfAbsent(deviceId, DeviceQueue::new);
+            synchronized (queue) {
+                // 队列刚被执行完的任务清空回收，重新获取
+                if (queue.retired) {
+                    continue;
+                }
+                if (shutdown) {
+                    capacity.release();
+                    future.completeExceptionally(new RejectedExecutionException("命令调度器已停止：" + name));
+                    return future;
+                }
+                (priority == Priority.URGENT ? queue.urgent : queue.normal).add(queued);
+                if (!queue.scheduled) {
+                    queue.scheduled = true;
+                    enqueueReady(queue, priority);
+                } else if (priority == Priority.URGENT && queue.readyEntry != null
+                        && queue.readyEntry.priority == Priority.NORMAL) {
+                    // 设备已按普通优先级排队，提升为紧急，原就绪项作废
+                    enqueueReady(queue, Priority.URGENT);
+                }
+            }
+            return future;
+        }
+    }
+
+    /**
+     * 取出优先级最高的就绪设备，开始其一个任务，任务结束后再放回设备；每个就绪项对应一次runNext
+     */
+    private void runNext() {
+        ReadyDevice next = ready.poll();
+        if (next == null) {
+            return;
+        }
+
+        DeviceQueue queue = next.queue;
+        Task<?> task;
+        synchronized (queue) {
+            // 已被提升优先级或已回收的就绪项
+            if (queue.readyEntry != next) {
+                return;
+            }
+            queue.readyEntry = null;
+            task = queue.urgent.isEmpty() ? queue.normal.poll() : queue.urgent.poll();
+        }
+        if (task == null) {
+            release(queue);
+            return;
+        }
+        task.start().whenComplete((result, e) -> {
+            capacity.release();
+            release(queue);
+        });
+    }
+
+    /**
+     * 设备的当前任务结束：还有任务时放回就绪队列，否则回收设备队列
+     */
+    private void release(DeviceQueue queue) {
+        synchronized (queue) {
+            if (queue.urgent.isEmpty() && queue.normal.isEmpty()) {
+                queue.scheduled = false;
+                queue.retired = true;
+                queues.remove(queue.deviceId, queue);
+            } else if (!shutdown) {
+                enqueueReady(queue, queue.urgent.isEmpty() ? Priority.NORMAL : Priority.URGENT);
+            }
+        }
+    }
+
+    /**
+     * 将设备放入就绪队列并派给工作线程，调用方需持有queue的锁
+     */
+    private void enqueueReady(DeviceQueue queue, Priority priority) {
+        ReadyDevice entry = new ReadyDevice(queue, priority, sequence.getAndIncrement());
+        queue.readyEntry = entry;
+        ready.add(entry);
+        try {
+            workers.execute(this::runNext);
+        } catch (RejectedExecutionException e) {
+            // 调度器已停止，剩余任务由shutdown结束
+        }
+    }
+
+    /**
+     * 有待执行任务的设备数
+     */
+    public int getActiveDevices() {
+        return queues.size();
+    }
+
+    /**
+     * 停止调度器：不再接受新任务，尚未执行的任务以异常结束，正在执行的任务会被中断
+     */
+    public void shutdown() {
+        shutdown = true;
+        workers.shutdownNow();
+        RejectedExecutionException cause = new RejectedExecutionException("命令调度器已停止：" + name);
+        int cancelled = 0;
+        for (DeviceQueue queue : queues.values()) {
+            synchronized (queue) {
+                cancelled += cancelAll(queue.urgent, cause) + cancelAll(queue.normal, cause);
+            }
+        }
+        ready.clear();
+        log.info("命令调度器已停止：{}, 取消排队任务数={}", name, cancelled);
+    }
+
+    private int cancelAll(ArrayDeque<Task<?>> tasks, RuntimeException cause) {
+        int count = tasks.size();
+        Task<?> task;
+        while ((task = tasks.poll()) != null) {
+            task.future.completeExceptionally(cause);
+            capacity.release();
+        }
+        return count;
+    }
+
+    private static class Task<T> {
+        private final Supplier<? extends CompletionStage<T>> supplier;
+        private final CompletableFuture<T> future;
+
+        Task(Supplier<? extends CompletionStage<T>> supplier, CompletableFuture<T> future) {
+            this.supplier = supplier;
+            this.future = future;
+        }
+
+        /**
+         * 开始执行，返回的future在任务（含异步部分）结束时完成
+         */
+        CompletableFuture<T> start() {
+            try {
+                supplier.get().whenComplete((result, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                                ? e.getCause() : e);
+                    } else {
+                        future.complete(result);
+                    }
+                });
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+    }
+
+    private static class DeviceQueue {
+        private final String deviceId;
+        private final ArrayDeque<Task<?>> urgent = new ArrayDeque<>();
+        private final ArrayDeque<Task<?>> normal = new ArrayDeque<>();
+        // 是否已在就绪队列中或正在执行
+        private boolean scheduled;
+        // 就绪队列中的有效项，正在执行时为null
+        private ReadyDevice readyEntry;
+        // 已清空并从映射中移除，不能再加入任务
+        private boolean retired;
+
+        DeviceQueue(String deviceId) {
+            this.deviceId = deviceId;
+        }
+    }
+
+    private static class ReadyDevice implements Comparable<ReadyDevice> {
+        private final DeviceQueue queue;
+        private final Priority priority;
+        private final long sequence;
+
+        ReadyDevice(DeviceQueue queue, Priority priority, long sequence) {
+            this.queue = queue;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(ReadyDevice other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.example.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 设备状态缓存（读穿透）
+ * 缓存未过期时直接返回，过期或缺失时调用showDevice加载；同一设备的并发加载合并为一次请求。
+ * MQTT收到状态变化时直接更新缓存中的状态，使轮询请求无需访问接口也能拿到最新状态。
+ * ListDevices得到的状态没有最后活跃时间，作为不完整项写入：只更新已有项的在线状态，
+ * 新写入的不完整项在get时视为缺失，仍通过showDevice加载完整状态。
+ * 写入时顺带清理：每隔一个有效期移除全部过期项；项数超过上限时再按更新时间淘汰最早的项
+ */
+@Service
+public class DeviceStatusCache {
+
+    private final long maxAgeNanos;
+    private final int maxEntries;
+
+    // deviceId -> 缓存项
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // deviceId -> 正在进行的加载
+    private final Map<String, CompletableFuture<DeviceStatus>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong lastPurgeNanos = new AtomicLong(System.nanoTime());
+    private final AtomicBoolean purging = new AtomicBoolean();
+
+    /**
+     * @param maxAgeMillis 缓存状态的最长有效时间
+     * @param maxEntries 最多缓存的设备数
+     */
+    public DeviceStatusCache(@Value("${iotda.status-cache.max-age-ms:30000}") long maxAgeMillis,
+                             @Value("${iotda.status-cache.max-entries:200000}") int maxEntries) {
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 读取设备状态，缓存缺失或过期时通过loader加载并写入缓存
+     */
+    public DeviceStatus get(String deviceId, Supplier<DeviceStatus> loader) {
+        Entry entry = entries.get(deviceId);
+        if (entry != null && !entry.partial && System.nanoTime() - entry.updatedNanos < maxAgeNanos) {
+            return entry.status;
+        }
+
+        CompletableFuture<DeviceStatus> future = new CompletableFuture<>();
+        CompletableFuture<DeviceStatus> existing = loading.putIfAbsent(deviceId, future);
+        if (existing != null) {
+            // 其他线程正在加载同一设备，等待其结果
+            return join(existing);
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            DeviceStatus status = loader.get();
+            put(deviceId, status, startNanos);
+            future.complete(status);
+            return status;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(deviceId, future);
+        }
+    }
+
+    /**
+     * 写入设备状态；加载期间若MQTT已推送更新的状态，则保留较新的那个
+     * @param observedNanos 状态的观测时间（System.nanoTime）
+     */
+    public void put(String deviceId, DeviceStatus status, long observedNanos) {
+        entries.merge(deviceId, new Entry(status, observedNanos, false),
+                (current, candidate) -> candidate.updatedNanos >= current.updatedNanos ? candidate : current);
+        purgeIfNeeded();
+    }
+
+    /**
+     * 写入不完整的设备状态（只有在线状态可信）
+     * 已有较旧的项时只更新其在线状态，保留最后活跃时间和完整标记；没有缓存项时写入不完整项
+     * @param observedNanos 状态的观测时间（System.nanoTime）
+     */
+    public void putPartial(String deviceId, DeviceStatus status, long observedNanos) {
+        entries.merge(deviceId, new Entry(status, observedNanos, true), (current, candidate) -> {
+            if (candidate.updatedNanos < current.updatedNanos) {
+                return current;
+            }
+            return new Entry(DeviceStatus.builder()
+                    .deviceId(deviceId)
+                    .status(candidate.status.getStatus())
+                    .lastActiveTime(current.status.getLastActiveTime())
+                    .region(current.status.getRegion())
+                    .build(), candidate.updatedNanos, current.partial);
+        });
+        purgeIfNeeded();
+    }
+
+    /**
+     * MQTT状态变化：已缓存的设备直接更新状态，未缓存的设备不处理
+     */
+    public void onStatusEvent(String deviceId, String newStatus) {
+        long now = System.nanoTime();
+        entries.computeIfPresent(deviceId, (id, current) -> new Entry(DeviceStatus.builder()
+                .deviceId(id)
+                .status(newStatus)
+                .lastActiveTime(current.status.getLastActiveTime())
+                .region(current.status.getRegion())
+                .build(), now, current.partial));
+    }
+
+    /**
+     * 使设备缓存失效
+     */
+    public void invalidate(String deviceId) {
+        entries.remove(deviceId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 距上次清理超过一个有效期，或项数超过上限时清理；同一时间只有一个写入线程执行清理
+     */
+    private void purgeIfNeeded() {
+        long now = System.nanoTime();
+        if (now - lastPurgeNanos.get() < maxAgeNanos && entries.size() <= maxEntries) {
+            return;
+        }
+        if (!purging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lastPurgeNanos.set(now);
+            entries.values().removeIf(entry -> now - entry.updatedNanos >= maxAgeNanos);
+            int excess = entries.size() - maxEntries;
+            if (excess > 0) {
+                // 多淘汰上限的10%，避免之后每次写入都触发淘汰
+                evictOldest(excess + maxEntries / 10);
+            }
+        } finally {
+            purging.set(false);
+        }
+    }
+
+    /**
+     * 淘汰更新时间最早的约count个缓存项
+     */
+    private void evictOldest(int count) {
+        long[] updated = entries.values().stream().mapToLong(entry -> entry.updatedNanos).toArray();
+        if (updated.length == 0) {
+            return;
+        }
+        Arrays.sort(updated);
+        long threshold = updated[Math.min(count, updated.length) - 1];
+        entries.values().removeIf(entry -> entry.updatedNanos <= threshold);
+    }
+
+    private static DeviceStatus join(CompletableFuture<DeviceStatus> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private static class Entry {
+        private final DeviceStatus status;
+        private final long updatedNanos;
+        // 状态来自ListDevices，缺少最后活跃时间
+        private final boolean partial;
+
+        Entry(DeviceStatus status, long updatedNanos, boolean partial) {
+            this.status = status;
+            this.updatedNanos = updatedNanos;
+            this.partial = partial;
+        }
+    }
+}
@@ -12,6 +12,7 @@ public class DeviceStatusListener {
 
     private final MqttAsyncClient mqttClient;
     private final DeviceStatusHandler statusHandler;
+    private final DeviceStatusCache statusCache;
 
     @PostConstruct
     public void initializeMQTT() {
@@ -75,6 +76,9 @@ public class DeviceStatusListener {
             log.info("收到设备状态变化：deviceId={}, status={}",
                     deviceId, event.getStatus());
 
+            // 更新状态缓存，后续查询无需调用接口
+            statusCache.onStatusEvent(deviceId, event.getStatus());
+
             // 异步处理状态变化
             statusHandler.handleStatusChange(deviceId, event);
 
@@ -0,0 +1,74 @@
+package org.example.service;
+
+import com.huaweicloud.sdk.core.auth.BasicCredentials;
+import com.huaweicloud.sdk.core.http.HttpConfig;
+import com.huaweicloud.sdk.iotda.v5.IoTDAClient;
+import com.huaweicloud.sdk.iotda.v5.region.IoTDARegion;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按地域接入点缓存的IoTDA客户端池
+ * 每个接入点在首次使用时创建一个客户端，同一地域的各分片共用该客户端及其HTTP连接池，
+ * 请求直接发往分片所在地域，不再全部经由华北接入点
+ */
+@Service
+public class IoTDAClientPool {
+
+    // 连接和读取超时（秒）
+    private static final int CONNECTION_TIMEOUT_SECONDS = 5;
+    private static final int READ_TIMEOUT_SECONDS = 30;
+
+    // 接入点 -> 客户端
+    private final Map<String, IoTDAClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 获取分片所在地域的客户端
+     */
+    public IoTDAClient getClient(ShardInfo shard) {
+        return clients.computeIfAbsent(shard.getEndpoint(), this::createClient);
+    }
+
+    /**
+     * 接入点格式为 iotda.{regionId}.myhuaweicloud.com；
+     * 设置IOTDA_ENDPOINT时所有分片都直连该地址，例如本地IoTDA模拟服务
+     */
+    private IoTDAClient createClient(String endpoint) {
+        BasicCredentials auth = new BasicCredentials()
+                .withAk(System.getenv("HUAWEI_AK"))
+                .withSk(System.getenv("HUAWEI_SK"));
+
+        // 同一客户端的连接由SDK底层连接池保持长连接复用
+        HttpConfig httpConfig = HttpConfig.getDefaultHttpConfig()
+                .withConnectionTimeout(CONNECTION_TIMEOUT_SECONDS)
+                .withReadTimeout(READ_TIMEOUT_SECONDS);
+
+        String overrideEndpoint = System.getenv("IOTDA_ENDPOINT");
+        if (overrideEndpoint != null) {
+            String projectId = System.getenv("IOTDA_PROJECT_ID");
+            auth.withProjectId(projectId != null ? projectId : "simulator");
+            log.info("创建IoTDA客户端：分片接入点={}，实际地址={}", endpoint, overrideEndpoint);
+            return IoTDAClient.newBuilder()
+                    .withCredential(auth)
+                    .withHttpConfig(httpConfig)
+                    .withEndpoint(overrideEndpoint)
+                    .build();
+        }
+
+        String regionId = endpoint.split("\\.")[1];
+        log.info("创建IoTDA客户端：region={}, endpoint={}", regionId, endpoint);
+        return IoTDAClient.newBuilder()
+                .withCredential(auth)
+                .withHttpConfig(httpConfig)
+                .withRegion(IoTDARegion.valueOf(regionId))
+                .build();
+    }
+
+    /**
+     * 已创建客户端的接入点数量
+     */
+    public int size() {
+        return clients.size();
+    }
+}
@@ -1,55 +1,174 @@
 package org.example.service;
 
-import com.huaweicloud.sdk.core.auth.BasicCredentials;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.huaweicloud.sdk.iotda.v5.IoTDAClient;
 import com.huaweicloud.sdk.iotda.v5.model.*;
-import com.huaweicloud.sdk.iotda.v5.region.IoTDARegion;
 import org.example.template.DeviceCommandTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * IoTDA服务客户端
+ * 请求经由分片所在地域的客户端发送，见 {@link IoTDAClientPool}；
+ * 每次调用都经过所在地域的熔断器，地域故障时快速失败，见 {@link RegionCircuitBreaker}；
+ * 熔断器放行后再获取地域配额（按华为云地域ID计），见 {@link ApiQuotaLimiter}：单条命令和单设备查询为交互式请求，
+ * 批量、异步发送（priority为urgent的除外）和批量查询为后台请求
  */
 @Service
 public class IoTDAService {
 
-    private final IoTDAClient iotdaClient;
+    // ListDevices单页最大条数
+    private static final int DEVICE_PAGE_LIMIT = 50;
+
     private final RegionShardingService shardingService;
+    private final IoTDAClientPool clientPool;
+    private final ShardedCommandSender commandSender;
+    private final BatchCommandTaskService batchCommandTaskService;
+    private final DeviceStatusCache statusCache;
+    private final CommandIdempotencyGuard idempotencyGuard;
+    private final RegionCircuitBreaker circuitBreaker;
+    private final CommandResultTracker commandTracker;
+    private final ApiQuotaLimiter quotaLimiter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 批量获取设备状态时各地域的分页线程，空闲后回收
+    private final ExecutorService regionListExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "device-status-lister");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public IoTDAService(RegionShardingService shardingService) {
+    /**
+     * @param shardDepth 每个分片同时在途的命令数
+     * @param shardQueueCapacity 每个分片排队等待的命令数上限
+     * @param supersedePending 同一设备同类型的新命令是否替换尚未发送的旧命令，被替换的命令不发送，
+     *                         响应status为SUPERSEDED；按设备和命令类型判断，不比较参数，默认关闭
+     */
+    public IoTDAService(RegionShardingService shardingService, IoTDAClientPool clientPool,
+                        BatchCommandTaskService batchCommandTaskService, DeviceStatusCache statusCache,
+                        CommandIdempotencyGuard idempotencyGuard, RegionCircuitBreaker circuitBreaker,
+                        CommandResultTracker commandTracker, ApiQuotaLimiter quotaLimiter,
+                        @Value("${iotda.command.shard-depth:16}") int shardDepth,
+                        @Value("${iotda.command.shard-queue-capacity:1000}") int shardQueueCapacity,
+                        @Value("${iotda.command.supersede-pending:false}") boolean supersedePending) {
         this.shardingService = shardingService;
-        this.iotdaClient = initializeClient();
+        this.clientPool = clientPool;
+        this.batchCommandTaskService = batchCommandTaskService;
+        this.statusCache = statusCache;
+        this.idempotencyGuard = idempotencyGuard;
+        this.circuitBreaker = circuitBreaker;
+        this.commandTracker = commandTracker;
+        this.quotaLimiter = quotaLimiter;
+        // 重复命令跟随首次结果、配额不足时异步等待，都不在分片的工作线程上等待
+        this.commandSender = new ShardedCommandSender(
+                (command, executor) -> idempotencyGuard.executeAsync(command,
+                        c -> createCommandAsync(c, executor)),
+                shardingService, shardDepth, shardQueueCapacity, supersedePending);
     }
 
     /**
      * 发送设备命令
+     * CreateCommand是同步命令，接口返回时设备已应答，返回的status为SUCCESSFUL（不再是PENDING），
+     * 设备未应答或执行失败时抛出异常；设备的应答内容见 {@link #sendDeviceCommandForResult}。
+     * 有效期内的重复命令（相同幂等键，或相同设备、命令类型和参数）不会再次下发，直接返回首次结果
      */
     public CommandResponse sendDeviceCommand(DeviceCommandTemplate command) {
-        try {
-            // 1. 获取分片信息
-            ShardInfo shard = shardingService.getShardByRegion(
-                    command.getDeviceId(),
-                    command.getRegion()
-            );
+        return idempotencyGuard.execute(command, c -> createCommand(c, ApiQuotaLimiter.Priority.INTERACTIVE));
+    }
+
+    /**
+     * 异步发送设备命令
+     * 命令进入所在分片的调度器排队，与批量发送共用同一设备的发送顺序，调用线程不等待发送结果；
+     * 分片队列已满时不等待，future以 {@link java.util.concurrent.RejectedExecutionException} 结束；
+     * 发送异常通过返回的future传递
+     */
+    public CompletableFuture<CommandResponse> sendDeviceCommandAsync(DeviceCommandTemplate command) {
+        return commandSender.send(command);
+    }
+
+    /**
+     * 异步发送设备命令并返回命令结果（设备应答），发送失败时future以原始异常结束；
+     * 有效期内的重复命令返回首次发送的结果，该结果已被淘汰时只有状态，应答内容为null
+     */
+    public CompletableFuture<CommandResultTracker.CommandResult> sendDeviceCommandForResult(
+            DeviceCommandTemplate command) {
+        return commandSender.send(command).thenApply(response -> {
+            CommandResultTracker.CommandResult result = commandTracker.getResult(response.getCommandId());
+            return result != null ? result : new CommandResultTracker.CommandResult(response.getCommandId(),
+                    command.getDeviceId(), response.getStatus(), null, 0);
+        });
+    }
+
+    /**
+     * 异步发送设备命令，失败时按重试策略在该设备的发送顺序内重试，重试结束前不发送该设备之后的命令
+     */
+    public CompletableFuture<CommandResponse> sendDeviceCommandAsync(DeviceCommandTemplate command,
+                                                                     CommandRetryPolicy retryPolicy) {
+        return commandSender.send(command, retryPolicy);
+    }
+
+    private CommandResponse createCommand(DeviceCommandTemplate command, ApiQuotaLimiter.Priority priority) {
+        ShardInfo shard = shardingService.getShardByRegion(command.getDeviceId(), command.getRegion());
+        acquireRegion(shard, ApiQuotaLimiter.ApiClass.COMMAND, priority);
+        return issueCommand(command, shard);
+    }
+
+    /**
+     * createCommand的异步版本，用于分片调度器：配额不足时异步等待，拿到配额后在executor（分片的工作线程）上调用接口
+     */
+    private CompletableFuture<CommandResponse> createCommandAsync(DeviceCommandTemplate command, Executor executor) {
+        ApiQuotaLimiter.Priority priority = "urgent".equalsIgnoreCase(command.getPriority())
+                ? ApiQuotaLimiter.Priority.INTERACTIVE : ApiQuotaLimiter.Priority.BACKGROUND;
+        ShardInfo shard = shardingService.getShardByRegion(command.getDeviceId(), command.getRegion());
+        circuitBreaker.checkAvailable(shard.getRegion());
+        CompletableFuture<Void> permit = quotaLimiter.acquireAsync(shardingService.getRegionId(shard.getRegion()),
+                ApiQuotaLimiter.ApiClass.COMMAND, priority);
+        if (permit.isDone() && !permit.isCompletedExceptionally()) {
+            // 不需要等待配额，直接在当前工作线程上调用
+            return CompletableFuture.completedFuture(issueCommand(command, shard));
+        }
+        return permit.thenApplyAsync(ignored -> issueCommand(command, shard), executor);
+    }
 
-            // 2. 构建华为云命令请求
+    /**
+     * 已获得配额，调用CreateCommand
+     */
+    private CommandResponse issueCommand(DeviceCommandTemplate command, ShardInfo shard) {
+        try {
+            // 1. 构建华为云命令请求
             CreateCommandRequest request = new CreateCommandRequest()
                     .withDeviceId(command.getDeviceId())
                     .withBody(buildCommandBody(command));
 
-            // 3. 调用华为云API
-            CreateCommandResponse response = iotdaClient.createCommand(request);
+            // 2. 通过分片所在地域的客户端调用华为云API
+            long startMillis = System.currentTimeMillis();
+            CreateCommandResponse response = circuitBreaker.execute(shard.getRegion(),
+                    () -> clientPool.getClient(shard).createCommand(request));
+
+            // 3. 同步命令返回时设备已应答，直接记录结果，见 CommandResultTracker
+            commandTracker.record(response.getCommandId(), command.getDeviceId(), "SUCCESSFUL",
+                    toJson(response.getResponse()), System.currentTimeMillis() - startMillis);
 
             return CommandResponse.builder()
                     .commandId(response.getCommandId())
-                    .status("PENDING")
+                    .status("SUCCESSFUL")
                     .region(shard.getRegion())
                     .timestamp(System.currentTimeMillis())
                     .build();
 
+        } catch (RegionUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("发送设备命令失败：deviceId={}, error={}",
                     command.getDeviceId(), e.getMessage());
@@ -59,29 +178,174 @@ public class IoTDAService {
 
     /**
      * 批量发送命令
+     * 相同的命令（地域、命令类型、参数都相同）达到阈值时合并为批量命令任务下发，
+     * 其余命令按分片派发到各自的发送线程池并发发送；批量任务在后台轮询，与逐条发送同时进行。
+     * 结果与输入顺序一致，单条命令失败时对应位置为失败响应
      */
     public List<CommandResponse> batchSendCommands(List<DeviceCommandTemplate> commands) {
-        // 按地域分片
-        Map<String, List<DeviceCommandTemplate>> shardedCommands =
-                commands.stream().collect(Collectors.groupingBy(cmd ->
-                        shardingService.getShardByRegion(cmd.getDeviceId(), cmd.getRegion()).getRegion()
-                ));
+        return batchSendCommands(commands, CommandRetryPolicy.NONE);
+    }
 
-        // 并行处理各分片
-        return shardedCommands.entrySet().parallelStream()
-                .flatMap(entry -> entry.getValue().stream()
-                        .map(this::sendDeviceCommand))
-                .collect(Collectors.toList());
+    /**
+     * 批量发送命令并等待结果，失败的命令按重试策略重试；分片队列已满时调用线程等待排队名额，形成背压。
+     * 结果与输入顺序一致，最终失败的位置为失败响应
+     */
+    public List<CommandResponse> batchSendCommands(List<DeviceCommandTemplate> commands,
+                                                   CommandRetryPolicy retryPolicy) {
+        List<CompletableFuture<CommandResponse>> futures = submitBatch(commands, retryPolicy, true);
+        List<CommandResponse> responses = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            DeviceCommandTemplate command = commands.get(i);
+            responses.add(futures.get(i).exceptionally(e -> CommandResponse.failure(command.getDeviceId(),
+                    (e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).getMessage()))
+                    .join());
+        }
+        return responses;
     }
 
     /**
-     * 查询设备状态
+     * 批量发送命令，返回每条命令的结果future，顺序与输入一致
+     * 发送失败时future以原始异常结束，调用方可据此判断是否重试
+     */
+    public List<CompletableFuture<CommandResponse>> batchSendCommandsAsync(List<DeviceCommandTemplate> commands) {
+        return batchSendCommandsAsync(commands, CommandRetryPolicy.NONE);
+    }
+
+    /**
+     * 批量发送命令，失败的命令按重试策略重试，返回每条命令的最终结果future，顺序与输入一致
+     * 逐条发送的命令在设备的发送顺序内重试；批量任务中失败的命令逐条重发，首次尝试计为任务中的那次。
+     * 调用线程不等待：分片队列已满的命令future以 {@link java.util.concurrent.RejectedExecutionException} 结束
+     */
+    public List<CompletableFuture<CommandResponse>> batchSendCommandsAsync(List<DeviceCommandTemplate> commands,
+                                                                           CommandRetryPolicy retryPolicy) {
+        return submitBatch(commands, retryPolicy, false);
+    }
+
+    /**
+     * @param waitForCapacity 分片队列已满时是否阻塞等待排队名额
+     */
+    private List<CompletableFuture<CommandResponse>> submitBatch(List<DeviceCommandTemplate> commands,
+                                                                 CommandRetryPolicy retryPolicy,
+                                                                 boolean waitForCapacity) {
+        Map<Integer, CompletableFuture<CommandResponse>> taskResults =
+                batchCommandTaskService.submitIdenticalCommands(commands);
+
+        List<CompletableFuture<CommandResponse>> futures = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            DeviceCommandTemplate command = commands.get(i);
+            CompletableFuture<CommandResponse> taskResult = taskResults.get(i);
+            futures.add(taskResult != null
+                    ? retryAfterTask(command, taskResult, retryPolicy)
+                    : commandSender.send(command, retryPolicy, waitForCapacity));
+        }
+        return futures;
+    }
+
+    /**
+     * 批量任务中失败的命令按策略延迟后逐条重发；异常保持原样交给策略判断（例如任务超时结果未知时不重发）
+     */
+    private CompletableFuture<CommandResponse> retryAfterTask(DeviceCommandTemplate command,
+                                                              CompletableFuture<CommandResponse> taskResult,
+                                                              CommandRetryPolicy retryPolicy) {
+        if (retryPolicy == CommandRetryPolicy.NONE) {
+            return taskResult;
+        }
+        return taskResult.handle((response, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            long delay = retryPolicy.retryDelayMillis(command, 1, cause);
+            if (delay < 0) {
+                return CompletableFuture.<CommandResponse>failedFuture(cause);
+            }
+            return commandSender.retryLater(command, 2, delay, retryPolicy);
+        }).thenCompose(result -> result);
+    }
+
+    /**
+     * 查询设备状态，优先读取缓存
      */
     public DeviceStatus queryDeviceStatus(String deviceId, String region) {
+        return queryDeviceStatus(deviceId, region, false);
+    }
+
+    /**
+     * 查询设备状态
+     * @param bypassCache true时跳过缓存直接调用showDevice，结果仍会写入缓存
+     */
+    public DeviceStatus queryDeviceStatus(String deviceId, String region, boolean bypassCache) {
+        if (bypassCache) {
+            DeviceStatus status = loadDeviceStatus(deviceId, region);
+            statusCache.put(deviceId, status, System.nanoTime());
+            return status;
+        }
+        return statusCache.get(deviceId, () -> loadDeviceStatus(deviceId, region));
+    }
+
+    /**
+     * 批量获取设备状态
+     * 各地域并行分页调用ListDevices（每页50台），每拿到一页就回调consumer并写入状态缓存，
+     * 不在内存中汇总全部结果；consumer会被多个地域线程并发调用。
+     * ListDevices不返回最后活跃时间，写入缓存的是不完整状态，见 {@link DeviceStatusCache#putPartial}
+     * @return 获取到的设备数量
+     */
+    public long streamDeviceStatuses(Collection<String> regions, Consumer<DeviceStatus> consumer) {
+        LongAdder total = new LongAdder();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String region : regions) {
+            futures.add(CompletableFuture.runAsync(
+                    () -> total.add(listRegionDeviceStatuses(region, consumer)), regionListExecutor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return total.sum();
+    }
+
+    /**
+     * 分页列出一个地域的设备状态，marker分页只能顺序进行
+     */
+    private long listRegionDeviceStatuses(String region, Consumer<DeviceStatus> consumer) {
+        ShardInfo shard = shardingService.getRegionShard(region);
+        IoTDAClient client = clientPool.getClient(shard);
+
+        long count = 0;
+        int pages = 0;
+        String marker = null;
+        do {
+            ListDevicesRequest request = new ListDevicesRequest()
+                    .withLimit(DEVICE_PAGE_LIMIT)
+                    .withMarker(marker);
+            ListDevicesResponse response = callRegion(shard, ApiQuotaLimiter.ApiClass.QUERY,
+                    ApiQuotaLimiter.Priority.BACKGROUND, () -> client.listDevices(request));
+            pages++;
+
+            List<QueryDeviceSimplify> devices = response.getDevices() != null ? response.getDevices() : List.of();
+            long observedNanos = System.nanoTime();
+            for (QueryDeviceSimplify device : devices) {
+                DeviceStatus status = DeviceStatus.builder()
+                        .deviceId(device.getDeviceId())
+                        .status(device.getStatus())
+                        .region(shard.getRegion())
+                        .build();
+                statusCache.putPartial(device.getDeviceId(), status, observedNanos);
+                consumer.accept(status);
+            }
+            count += devices.size();
+
+            marker = response.getPage() != null && devices.size() == DEVICE_PAGE_LIMIT
+                    ? response.getPage().getMarker() : null;
+        } while (marker != null);
+
+        log.info("批量获取设备状态完成：region={}, 设备数={}, 请求页数={}", shard.getRegion(), count, pages);
+        return count;
+    }
+
+    private DeviceStatus loadDeviceStatus(String deviceId, String region) {
         ShardInfo shard = shardingService.getShardByRegion(deviceId, region);
 
         ShowDeviceRequest request = new ShowDeviceRequest().withDeviceId(deviceId);
-        ShowDeviceResponse response = iotdaClient.showDevice(request);
+        ShowDeviceResponse response = callRegion(shard, ApiQuotaLimiter.ApiClass.QUERY,
+                ApiQuotaLimiter.Priority.INTERACTIVE, () -> clientPool.getClient(shard).showDevice(request));
 
         return DeviceStatus.builder()
                 .deviceId(deviceId)
@@ -91,15 +355,36 @@ public class IoTDAService {
                 .build();
     }
 
-    private IoTDAClient initializeClient() {
-        BasicCredentials auth = new BasicCredentials()
-                .withAk(System.getenv("HUAWEI_AK"))
-                .withSk(System.getenv("HUAWEI_SK"));
+    /**
+     * 先确认地域未熔断，再获取配额，最后在熔断器保护下调用；
+     * 熔断期间不消耗配额，配额等待也不计入熔断器的慢调用统计
+     */
+    private <T> T callRegion(ShardInfo shard, ApiQuotaLimiter.ApiClass api, ApiQuotaLimiter.Priority priority,
+                             Supplier<T> call) {
+        acquireRegion(shard, api, priority);
+        return circuitBreaker.execute(shard.getRegion(), call);
+    }
 
-        return IoTDAClient.newBuilder()
-                .withCredential(auth)
-                .withRegion(IoTDARegion.CN_NORTH_4)
-                .build();
+    private void acquireRegion(ShardInfo shard, ApiQuotaLimiter.ApiClass api, ApiQuotaLimiter.Priority priority) {
+        circuitBreaker.checkAvailable(shard.getRegion());
+        quotaLimiter.acquire(shardingService.getRegionId(shard.getRegion()), api, priority);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        commandSender.shutdown();
+        regionListExecutor.shutdownNow();
+    }
+
+    private String toJson(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            return value.toString();
+        }
     }
 
     private DeviceCommandRequest buildCommandBody(DeviceCommandTemplate template) {
@@ -0,0 +1,420 @@
+package org.example.service;
+
+import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 按地域的熔断器
+ * 在滑动时间窗内统计每个地域的失败率和慢调用率，任一超过阈值即打开熔断，
+ * 打开期间该地域的调用直接抛出 {@link RegionUnavailableException}，不占用发送线程；
+ * 打开时间到后进入半开状态，放行少量探测请求，全部成功则关闭，任一失败则重新打开；
+ * 探测请求超过时限仍未全部返回（例如调用线程异常退出）时同样重新打开，避免地域一直停在半开状态。
+ * 状态切换使用CAS，调用路径上没有锁
+ */
+@Service
+public class RegionCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // 窗口分桶数，每桶时长 = 窗口时长 / 分桶数
+    private static final int BUCKETS = 10;
+    // 每桶计数的位宽，计数达到上限后本桶不再累加
+    private static final int COUNT_BITS = 16;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long bucketNanos;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final long halfOpenTimeoutNanos;
+
+    // 地域 -> 熔断器
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * @param failureRateThreshold 失败率阈值（百分比）
+     * @param slowCallRateThreshold 慢调用率阈值（百分比）
+     * @param slowCallMillis 超过该耗时的调用视为慢调用
+     * @param minimumCalls 窗口内调用数达到该值才计算比率
+     * @param windowMillis 统计窗口时长
+     * @param openMillis 打开后多久进入半开状态
+     * @param halfOpenProbes 半开状态放行的探测请求数
+     * @param halfOpenTimeoutMillis 半开状态等待探测结果的最长时间
+     */
+    public RegionCircuitBreaker(@Value("${iotda.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+                                @Value("${iotda.circuit-breaker.slow-call-rate-threshold:80}") int slowCallRateThreshold,
+                                @Value("${iotda.circuit-breaker.slow-call-ms:3000}") long slowCallMillis,
+                                @Value("${iotda.circuit-breaker.minimum-calls:20}") int minimumCalls,
+                                @Value("${iotda.circuit-breaker.window-ms:10000}") long windowMillis,
+                                @Value("${iotda.circuit-breaker.open-ms:30000}") long openMillis,
+                                @Value("${iotda.circuit-breaker.half-open-probes:5}") int halfOpenProbes,
+                                @Value("${iotda.circuit-breaker.half-open-timeout-ms:10000}") long halfOpenTimeoutMillis) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.minimumCalls = minimumCalls;
+        this.bucketNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMillis) / BUCKETS);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenProbes = halfOpenProbes;
+        this.halfOpenTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(halfOpenTimeoutMillis);
+    }
+
+    /**
+     * 在地域熔断器保护下执行一次调用
+     * @throws RegionUnavailableException 熔断打开或半开探测名额已用完
+     */
+    public <T> T execute(String region, Supplier<T> call) {
+        Breaker breaker = breakers.computeIfAbsent(region, Breaker::new);
+        long permit = breaker.tryAcquire();
+        if (permit < 0) {
+            breaker.rejected.increment();
+            throw new RegionUnavailableException(region, breaker.retryAfterMillis());
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            T result = call.get();
+            breaker.onResult(permit, System.nanoTime() - startNanos, false);
+            return result;
+        } catch (RuntimeException e) {
+            breaker.onResult(permit, System.nanoTime() - startNanos, isFailure(e));
+            throw e;
+        } catch (Error e) {
+            breaker.onResult(permit, System.nanoTime() - startNanos, true);
+            throw e;
+        }
+    }
+
+    /**
+     * 调用前的快速检查：熔断打开且未到探测时间，或半开探测名额已用完时直接拒绝，
+     * 用于在获取配额等准备工作之前先确认地域可用；通过检查不占用探测名额，实际调用仍需经过 {@link #execute}
+     * @throws RegionUnavailableException 地域当前不可用
+     */
+    public void checkAvailable(String region) {
+        Breaker breaker = breakers.get(region);
+        if (breaker != null && !breaker.isAvailable()) {
+            breaker.rejected.increment();
+            throw new RegionUnavailableException(region, breaker.retryAfterMillis());
+        }
+    }
+
+    public State getState(String region) {
+        Breaker breaker = breakers.get(region);
+        return breaker != null ? breaker.snapshot.get().state : State.CLOSED;
+    }
+
+    /**
+     * 各地域熔断器的当前状态和窗口统计
+     */
+    public List<Metrics> getMetrics() {
+        List<Metrics> metrics = new ArrayList<>(breakers.size());
+        for (Breaker breaker : breakers.values()) {
+            long[] totals = breaker.windowTotals(System.nanoTime());
+            metrics.add(new Metrics(breaker.region, breaker.snapshot.get().state,
+                    totals[0], rate(totals[1], totals[0]), rate(totals[2], totals[0]),
+                    breaker.rejected.sum(), breaker.opened.sum()));
+        }
+        return metrics;
+    }
+
+    /**
+     * 4xx（限流429除外）说明地域服务正常应答，只是请求本身有问题，不计入失败
+     */
+    private static boolean isFailure(RuntimeException e) {
+        if (e instanceof ServiceResponseException) {
+            int status = ((ServiceResponseException) e).getHttpStatusCode();
+            return status >= 500 || status == 429;
+        }
+        return true;
+    }
+
+    private static int rate(long count, long calls) {
+        return calls == 0 ? 0 : (int) (count * 100 / calls);
+    }
+
+    private class Breaker {
+        private final String region;
+        private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.closed(0));
+        // 每桶打包：epoch(16) | calls(16) | failures(16) | slow(16)
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder opened = new LongAdder();
+
+        Breaker(String region) {
+            this.region = region;
+        }
+
+        /**
+         * @return 放行时返回当前状态代数，拒绝时返回-1
+         */
+        long tryAcquire() {
+            while (true) {
+                Snapshot current = snapshot.get();
+                switch (current.state) {
+                    case CLOSED:
+                        return current.generation;
+                    case OPEN:
+                        long now = System.nanoTime();
+                        if (now - current.sinceNanos < openNanos) {
+                            return -1;
+                        }
+                        Snapshot halfOpen = Snapshot.halfOpen(current.generation + 1, now, 1, 0);
+                        if (snapshot.compareAndSet(current, halfOpen)) {
+                            log.info("地域熔断进入半开状态，开始探测：region={}", region);
+                            return halfOpen.generation;
+                        }
+                        break;
+                    default:
+                        long probeNanos = System.nanoTime();
+                        if (probeNanos - current.sinceNanos >= halfOpenTimeoutNanos) {
+                            // 探测超时仍未全部返回，按探测失败处理，重新打开后由下一轮重新判断
+                            if (snapshot.compareAndSet(current, Snapshot.open(current.generation + 1, probeNanos))) {
+                                opened.increment();
+                                log.warn("地域探测超时，熔断重新打开：region={}, 已放行={}, 已成功={}",
+                                        region, current.probesIssued, current.probesSucceeded);
+                            }
+                            break;
+                        }
+                        if (current.probesIssued >= halfOpenProbes) {
+                            return -1;
+                        }
+                        if (snapshot.compareAndSet(current, Snapshot.halfOpen(current.generation, current.sinceNanos,
+                                current.probesIssued + 1, current.probesSucceeded))) {
+                            return current.generation;
+                        }
+                }
+            }
+        }
+
+        /**
+         * 不改变状态地判断tryAcquire是否可能放行
+         */
+        boolean isAvailable() {
+            Snapshot current = snapshot.get();
+            long now = System.nanoTime();
+            switch (current.state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    return now - current.sinceNanos >= openNanos;
+                default:
+                    return current.probesIssued < halfOpenProbes || now - current.sinceNanos >= halfOpenTimeoutNanos;
+            }
+        }
+
+        /**
+         * 记录调用结果；放行后状态已切换的结果只统计不参与判定
+         */
+        void onResult(long permit, long elapsedNanos, boolean failed) {
+            boolean slow = elapsedNanos >= slowCallNanos;
+            long now = System.nanoTime();
+
+            while (true) {
+                Snapshot current = snapshot.get();
+                if (current.generation != permit) {
+                    return;
+                }
+                if (current.state == State.HALF_OPEN) {
+                    if (failed || slow) {
+                        if (snapshot.compareAndSet(current, Snapshot.open(current.generation + 1, now))) {
+                            opened.increment();
+                            log.warn("地域探测失败，熔断重新打开：region={}, failed={}, slow={}", region, failed, slow);
+                            return;
+                        }
+                    } else if (current.probesSucceeded + 1 >= halfOpenProbes) {
+                        if (snapshot.compareAndSet(current, Snapshot.closed(current.generation + 1))) {
+                            resetWindow();
+                            log.info("地域探测全部成功，熔断关闭：region={}", region);
+                            return;
+                        }
+                    } else if (snapshot.compareAndSet(current, Snapshot.halfOpen(current.generation,
+                            current.sinceNanos, current.probesIssued, current.probesSucceeded + 1))) {
+                        return;
+                    }
+                    continue;
+                }
+
+                // CLOSED：记入窗口后检查阈值
+                record(now, failed, slow);
+                long[] totals = windowTotals(now);
+                if (totals[0] < minimumCalls) {
+                    return;
+                }
+                int failureRate = rate(totals[1], totals[0]);
+                int slowRate = rate(totals[2], totals[0]);
+                if (failureRate < failureRateThreshold && slowRate < slowCallRateThreshold) {
+                    return;
+                }
+                if (snapshot.compareAndSet(current, Snapshot.open(current.generation + 1, now))) {
+                    opened.increment();
+                    log.warn("地域熔断打开：region={}, 调用数={}, 失败率={}%, 慢调用率={}%",
+                            region, totals[0], failureRate, slowRate);
+                }
+                return;
+            }
+        }
+
+        long retryAfterMillis() {
+            Snapshot current = snapshot.get();
+            long remaining = current.state == State.OPEN
+                    ? openNanos - (System.nanoTime() - current.sinceNanos) : 0;
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(remaining));
+        }
+
+        private void record(long now, boolean failed, boolean slow) {
+            long epoch = now / bucketNanos;
+            // nanoTime可能为负，取非负余数
+            int index = (int) Math.floorMod(epoch, (long) BUCKETS);
+            long tag = epoch & COUNT_MASK;
+            while (true) {
+                long value = buckets.get(index);
+                long base = (value >>> (3 * COUNT_BITS)) == tag ? value : tag << (3 * COUNT_BITS);
+                if (((base >>> (2 * COUNT_BITS)) & COUNT_MASK) == COUNT_MASK) {
+                    // 本桶已满，后续调用不再计入，比率由已计入的样本决定
+                    return;
+                }
+                long updated = base + (1L << (2 * COUNT_BITS))
+                        + (failed ? 1L << COUNT_BITS : 0)
+                        + (slow ? 1L : 0);
+                if (buckets.compareAndSet(index, value, updated)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return {调用数, 失败数, 慢调用数}
+         */
+        private long[] windowTotals(long now) {
+            long currentEpoch = now / bucketNanos;
+            long[] totals = new long[3];
+            for (int i = 0; i < BUCKETS; i++) {
+                long epoch = currentEpoch - i;
+                long value = buckets.get((int) Math.floorMod(epoch, (long) BUCKETS));
+                if ((value >>> (3 * COUNT_BITS)) != (epoch & COUNT_MASK)) {
+                    continue;
+                }
+                totals[0] += (value >>> (2 * COUNT_BITS)) & COUNT_MASK;
+                totals[1] += (value >>> COUNT_BITS) & COUNT_MASK;
+                totals[2] += value & COUNT_MASK;
+            }
+            return totals;
+        }
+
+        private void resetWindow() {
+            // 清零后epoch标记不再匹配当前时间，相当于窗口为空
+            long staleTag = ((System.nanoTime() / bucketNanos) + BUCKETS) & COUNT_MASK;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, staleTag << (3 * COUNT_BITS));
+            }
+        }
+    }
+
+    /**
+     * 熔断器状态快照，不可变，整体CAS替换
+     */
+    private static class Snapshot {
+        private final State state;
+        // 每次状态切换加一，用于识别放行时的状态
+        private final long generation;
+        // 进入OPEN或HALF_OPEN状态的时间
+        private final long sinceNanos;
+        private final int probesIssued;
+        private final int probesSucceeded;
+
+        private Snapshot(State state, long generation, long sinceNanos, int probesIssued, int probesSucceeded) {
+            this.state = state;
+            this.generation = generation;
+            this.sinceNanos = sinceNanos;
+            this.probesIssued = probesIssued;
+            this.probesSucceeded = probesSucceeded;
+        }
+
+        static Snapshot closed(long generation) {
+            return new Snapshot(State.CLOSED, generation, 0, 0, 0);
+        }
+
+        static Snapshot open(long generation, long openedNanos) {
+            return new Snapshot(State.OPEN, generation, openedNanos, 0, 0);
+        }
+
+        static Snapshot halfOpen(long generation, long sinceNanos, int probesIssued, int probesSucceeded) {
+            return new Snapshot(State.HALF_OPEN, generation, sinceNanos, probesIssued, probesSucceeded);
+        }
+    }
+
+    /**
+     * 单个地域的熔断指标
+     */
+    public static class Metrics {
+        private final String region;
+        private final State state;
+        private final long calls;
+        private final int failureRate;
+        private final int slowCallRate;
+        private final long rejectedCount;
+        private final long openCount;
+
+        Metrics(String region, State state, long calls, int failureRate, int slowCallRate,
+                long rejectedCount, long openCount) {
+            this.region = region;
+            this.state = state;
+            this.calls = calls;
+            this.failureRate = failureRate;
+            this.slowCallRate = slowCallRate;
+            this.rejectedCount = rejectedCount;
+            this.openCount = openCount;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * 窗口内的调用数
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        public int getFailureRate() {
+            return failureRate;
+        }
+
+        public int getSlowCallRate() {
+            return slowCallRate;
+        }
+
+        /**
+         * 累计被熔断拒绝的调用数
+         */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        /**
+         * 累计打开次数
+         */
+        public long getOpenCount() {
+            return openCount;
+        }
+    }
+}
@@ -1,35 +1,123 @@
 package org.example.service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * 地域分片服务
+ * 设备按一致性哈希环分配到地域内的分片，调整分片数时只有少量设备迁移，见 {@link ConsistentHashRing}。
+ * 所有分片的ShardInfo在启动时创建并共享（ShardInfo不可变），每个分片有一个全局编号；
+ * 路由过程只做一次地域别名查表和一次环上二分查找，不创建对象
  */
 @Service
 public class RegionShardingService {
 
+    // 每个分片的虚拟节点数
+    private static final int VIRTUAL_NODES = 512;
+
     private static final Map<String, List<String>> REGION_MAPPING = Map.of(
             "华北", Arrays.asList("beijing", "tianjin", "hebei", "shanxi", "neimenggu"),
             "华东", Arrays.asList("shanghai", "jiangsu", "zhejiang", "anhui", "fujian", "jiangxi", "shandong")
     );
 
+    // 地域名称及别名 -> 地域路由
+    private final Map<String, RegionRoute> routesByAlias = new HashMap<>();
+    // 全局分片编号 -> 分片信息
+    private final ShardInfo[] shardsById;
+    // 全局分片编号 -> "地域_分片序号"
+    private final String[] shardKeysById;
+    private final List<String> regions;
+
+    public RegionShardingService() {
+        List<ShardInfo> shards = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<String> regionNames = new ArrayList<>();
+        for (String region : REGION_MAPPING.keySet()) {
+            int shardCount = getShardCount(region);
+            String endpoint = getRegionEndpoint(region);
+            RegionRoute route = new RegionRoute(new ConsistentHashRing(region, shardCount, VIRTUAL_NODES),
+                    shards.size(), regionIdOf(endpoint));
+            for (int index = 0; index < shardCount; index++) {
+                shards.add(ShardInfo.builder()
+                        .region(region)
+                        .shardIndex(index)
+                        .endpoint(endpoint)
+                        .build());
+                keys.add(region + "_" + index);
+            }
+            routesByAlias.put(region, route);
+            routesByAlias.put(route.regionId, route);
+            regionNames.add(region);
+        }
+        routesByAlias.put("NORTH_CHINA", routesByAlias.get("华北"));
+        routesByAlias.put("EAST_CHINA", routesByAlias.get("华东"));
+
+        this.shardsById = shards.toArray(new ShardInfo[0]);
+        this.shardKeysById = keys.toArray(new String[0]);
+        this.regions = List.copyOf(regionNames);
+    }
+
     /**
      * 根据设备ID和地域进行分片
+     * @return 预先创建的共享实例（不可变）
      */
     public ShardInfo getShardByRegion(String deviceId, String region) {
-        String normalizedRegion = normalizeRegion(region);
+        return shardsById[routeShardId(deviceId, region)];
+    }
+
+    /**
+     * 设备所在分片的全局编号，范围 [0, getShardTotal())
+     */
+    public int routeShardId(String deviceId, String region) {
+        RegionRoute route = route(region);
+        return route.firstShardId + route.ring.shardOf(deviceId);
+    }
+
+    /**
+     * 按全局编号获取分片信息
+     */
+    public ShardInfo getShard(int shardId) {
+        return shardsById[shardId];
+    }
+
+    /**
+     * 分片的字符串标识："地域_分片序号"
+     */
+    public String getShardKey(int shardId) {
+        return shardKeysById[shardId];
+    }
+
+    /**
+     * 所有地域的分片总数
+     */
+    public int getShardTotal() {
+        return shardsById.length;
+    }
 
-        // 计算分片索引
-        int shardIndex = Math.abs(deviceId.hashCode()) % getShardCount(normalizedRegion);
+    /**
+     * 所有地域
+     */
+    public List<String> getRegions() {
+        return regions;
+    }
 
-        return ShardInfo.builder()
-                .region(normalizedRegion)
-                .shardIndex(shardIndex)
-                .endpoint(getRegionEndpoint(normalizedRegion))
-                .build();
+    /**
+     * 地域名称或别名对应的华为云地域ID，例如 华北 -> cn-north-4；
+     * 与批量注册工具使用的region一致，客户端配额按地域ID计算，见 {@link ApiQuotaLimiter}
+     */
+    public String getRegionId(String region) {
+        return route(region).regionId;
+    }
+
+    /**
+     * 地域级别的分片信息（不区分设备），用于按地域调用的接口，例如设备列表查询
+     */
+    public ShardInfo getRegionShard(String region) {
+        return shardsById[route(region).firstShardId];
     }
 
     /**
@@ -37,19 +125,18 @@ public class RegionShardingService {
      */
     public Map<String, List<DeviceTask>> shardTasksByRegion(List<DeviceTask> tasks) {
         return tasks.stream()
-                .collect(Collectors.groupingBy(task -> {
-                    ShardInfo shard = getShardByRegion(task.getDeviceId(), task.getRegion());
-                    return shard.getRegion() + "_" + shard.getShardIndex();
-                }));
+                .collect(Collectors.groupingBy(task -> getShardKey(routeShardId(task.getDeviceId(), task.getRegion()))));
     }
 
-    private String normalizeRegion(String region) {
-        if ("华北".equals(region) || "NORTH_CHINA".equals(region)) {
-            return "华北";
-        } else if ("华东".equals(region) || "EAST_CHINA".equals(region)) {
-            return "华东";
+    /**
+     * 地域名称或别名查表
+     */
+    private RegionRoute route(String region) {
+        RegionRoute route = region != null ? routesByAlias.get(region) : null;
+        if (route == null) {
+            throw new IllegalArgumentException("不支持的地域：" + region);
         }
-        throw new IllegalArgumentException("不支持的地域：" + region);
+        return route;
     }
 
     private int getShardCount(String region) {
@@ -61,4 +148,25 @@ public class RegionShardingService {
                 "iotda.cn-north-4.myhuaweicloud.com" :
                 "iotda.cn-east-3.myhuaweicloud.com";
     }
+
+    /**
+     * 从接入地址取地域ID：iotda.cn-north-4.myhuaweicloud.com -> cn-north-4
+     */
+    private static String regionIdOf(String endpoint) {
+        return endpoint.split("\\.")[1];
+    }
+
+    private static class RegionRoute {
+        private final ConsistentHashRing ring;
+        // 本地域第一个分片的全局编号
+        private final int firstShardId;
+        // 华为云地域ID
+        private final String regionId;
+
+        RegionRoute(ConsistentHashRing ring, int firstShardId, String regionId) {
+            this.ring = ring;
+            this.firstShardId = firstShardId;
+            this.regionId = regionId;
+        }
+    }
 }
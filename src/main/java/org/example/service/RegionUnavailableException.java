@@ -0,0 +1,18 @@
+package org.example.service;
+
+/**
+ * 地域熔断器处于打开状态，请求未发出即失败
+ */
+public class RegionUnavailableException extends RuntimeException {
+
+    private final String region;
+
+    public RegionUnavailableException(String region, long retryAfterMillis) {
+        super("地域熔断中：" + region + "，约" + retryAfterMillis + "ms后探测恢复");
+        this.region = region;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+}
@@ -1,7 +1,18 @@
 package org.example.service;
 
+import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+import org.example.template.DeviceCommandTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * 带重试的IoTDA服务
+ * 同步接口使用RetryTemplate；异步接口的重试在命令所在设备的发送顺序内进行，
+ * 重试结束前该设备之后的命令不会越过它发送，等待退避期间不占用任何线程
  */
 @Service
 public class ReliableIoTDAService {
@@ -9,6 +20,33 @@ public class ReliableIoTDAService {
     private final IoTDAService iotdaService;
     private final RetryTemplate retryTemplate;
 
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final RetryBudget retryBudget;
+    private final CommandRetryPolicy retryPolicy = this::retryDelayMillis;
+
+    /**
+     * @param maxAttempts 异步发送的最大尝试次数（含首次）
+     * @param initialBackoffMillis 首次重试的退避上限，之后每次翻倍
+     * @param maxBackoffMillis 退避上限
+     * @param budgetRatio 每次首次发送可换得的重试次数
+     * @param budgetMax 重试预算的最大余额
+     */
+    public ReliableIoTDAService(IoTDAService iotdaService, RetryTemplate retryTemplate,
+                                @Value("${iotda.retry.max-attempts:3}") int maxAttempts,
+                                @Value("${iotda.retry.initial-backoff-ms:200}") long initialBackoffMillis,
+                                @Value("${iotda.retry.max-backoff-ms:10000}") long maxBackoffMillis,
+                                @Value("${iotda.retry.budget-ratio:0.2}") double budgetRatio,
+                                @Value("${iotda.retry.budget-max:100}") int budgetMax) {
+        this.iotdaService = iotdaService;
+        this.retryTemplate = retryTemplate;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.retryBudget = new RetryBudget(budgetRatio, budgetMax);
+    }
+
     /**
      * 带重试的命令发送
      */
@@ -19,6 +57,11 @@ public class ReliableIoTDAService {
 
             try {
                 return iotdaService.sendDeviceCommand(command);
+            } catch (RegionUnavailableException e) {
+                // 地域熔断中，继续重试只会占住线程，直接结束
+                log.warn("地域熔断，放弃重试：deviceId={}, region={}", command.getDeviceId(), e.getRegion());
+                context.setExhaustedOnly();
+                throw e;
             } catch (Exception e) {
                 log.warn("命令发送失败，准备重试：deviceId={}, error={}",
                         command.getDeviceId(), e.getMessage());
@@ -28,25 +71,99 @@ public class ReliableIoTDAService {
             // 重试失败回调
             log.error("命令发送最终失败：deviceId={}, 重试次数={}",
                     command.getDeviceId(), context.getRetryCount());
+            if (context.getLastThrowable() instanceof RegionUnavailableException) {
+                return CommandResponse.failure(command.getDeviceId(), context.getLastThrowable().getMessage());
+            }
             return CommandResponse.failure(command.getDeviceId(), "重试失败");
         });
     }
 
     /**
-     * 带重试的状态查询
+     * 异步发送命令，失败时按指数退避加随机抖动重试
+     * 重试在设备的发送顺序内进行，等待期间不阻塞线程；重试预算耗尽、地域熔断、配额不足、
+     * 请求本身错误（4xx）或结果未知时不再重试。返回的future总是正常完成，最终失败时为失败响应
+     */
+    public CompletableFuture<CommandResponse> retryCommandAsync(DeviceCommandTemplate command) {
+        retryBudget.onRequest();
+        return iotdaService.sendDeviceCommandAsync(command, retryPolicy)
+                .exceptionally(e -> toFailure(command, e));
+    }
+
+    /**
+     * 第attempt次尝试失败后的重试间隔，不再重试时返回-1
+     */
+    private long retryDelayMillis(DeviceCommandTemplate command, int attempt, Throwable error) {
+        if (attempt >= maxAttempts || !isRetryable(error)) {
+            log.error("命令发送最终失败：deviceId={}, 尝试次数={}, error={}",
+                    command.getDeviceId(), attempt, error.getMessage());
+            return -1;
+        }
+        if (!retryBudget.tryAcquireRetry()) {
+            log.warn("重试预算已用完，放弃重试：deviceId={}, 尝试次数={}", command.getDeviceId(), attempt);
+            return -1;
+        }
+
+        long delay = backoffMillis(attempt);
+        log.warn("命令发送失败，{}ms后第{}次重试：deviceId={}, error={}",
+                delay, attempt, command.getDeviceId(), error.getMessage());
+        return delay;
+    }
+
+    private static CommandResponse toFailure(DeviceCommandTemplate command, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return CommandResponse.failure(command.getDeviceId(), cause.getMessage());
+    }
+
+    /**
+     * 全抖动指数退避：在 [0, min(上限, 初始值×2^(n-1))] 内随机取值，避免大量命令同时重试
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * 地域熔断、客户端配额不足、调度器停止或队列已满、4xx（限流429除外）重试也不会成功；
+     * 批量任务超时或明细缺失时命令可能已送达设备，不能重发
+     */
+    private static boolean isRetryable(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof RegionUnavailableException || e instanceof ApiQuotaExceededException
+                    || e instanceof RejectedExecutionException) {
+                return false;
+            }
+            if (e instanceof BatchCommandTaskException) {
+                return !((BatchCommandTaskException) e).isOutcomeUnknown();
+            }
+            if (e instanceof ServiceResponseException) {
+                int status = ((ServiceResponseException) e).getHttpStatusCode();
+                return status >= 500 || status == 429;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 带重试的状态查询，缓存命中时不调用接口
      */
     public DeviceStatus retryQueryStatus(String deviceId, String region) {
         return retryTemplate.execute(context -> {
-            return iotdaService.queryDeviceStatus(deviceId, region);
+            try {
+                return iotdaService.queryDeviceStatus(deviceId, region);
+            } catch (RegionUnavailableException e) {
+                context.setExhaustedOnly();
+                throw e;
+            }
         });
     }
 
     /**
      * 批量重试命令
+     * 整批发送（相同命令合并为批量任务），失败的命令按实际异常判断是否重试，所有重试并发等待；
+     * 结果与输入顺序一致，最终失败的位置为失败响应
      */
     public List<CommandResponse> retryBatchCommands(List<DeviceCommandTemplate> commands) {
-        return commands.parallelStream()
-                .map(this::retryCommand)
-                .collect(Collectors.toList());
+        commands.forEach(command -> retryBudget.onRequest());
+        return iotdaService.batchSendCommands(commands, retryPolicy);
     }
 }
@@ -0,0 +1,58 @@
+package org.example.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局重试预算
+ * 每次首次发送存入ratio个令牌，每次重试取出一个令牌，令牌不足时放弃重试；
+ * 余额上限为maxBalance，因此重试量被限制在 首次发送量×ratio 加上一次性的突发余额之内，
+ * 下游整体故障时重试不会把请求量放大数倍
+ */
+public class RetryBudget {
+
+    // 令牌按千分之一计，避免浮点CAS
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long maxBalance;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio 每次首次发送可换得的重试次数，例如0.2
+     * @param maxBalance 最多积累的重试次数，初始即为满额
+     */
+    public RetryBudget(double ratio, int maxBalance) {
+        this.depositPerRequest = Math.round(ratio * SCALE);
+        this.maxBalance = maxBalance * SCALE;
+        this.balance = new AtomicLong(this.maxBalance);
+    }
+
+    /**
+     * 记录一次首次发送
+     */
+    public void onRequest() {
+        balance.accumulateAndGet(depositPerRequest, (current, deposit) -> Math.min(maxBalance, current + deposit));
+    }
+
+    /**
+     * 尝试为一次重试取出令牌
+     */
+    public boolean tryAcquireRetry() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 当前可用的重试次数
+     */
+    public long available() {
+        return balance.get() / SCALE;
+    }
+}
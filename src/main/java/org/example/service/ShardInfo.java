@@ -0,0 +1,77 @@
+package org.example.service;
+
+/**
+ * 分片信息
+ * 由 {@link RegionShardingService} 在启动时为每个分片创建一份，路由时直接返回共享实例；
+ * 字段全部为final，共享给所有调用方也不会被修改
+ */
+public final class ShardInfo {
+
+    private final String region;
+    private final int shardIndex;
+    private final String endpoint;
+
+    private ShardInfo(Builder builder) {
+        this.region = builder.region;
+        this.shardIndex = builder.shardIndex;
+        this.endpoint = builder.endpoint;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 地域名称，例如 华北
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * 地域内的分片序号
+     */
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    /**
+     * 分片所在地域的IoTDA接入点
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public String toString() {
+        return region + "_" + shardIndex;
+    }
+
+    public static class Builder {
+        private String region;
+        private int shardIndex;
+        private String endpoint;
+
+        private Builder() {
+        }
+
+        public Builder region(String region) {
+            this.region = region;
+            return this;
+        }
+
+        public Builder shardIndex(int shardIndex) {
+            this.shardIndex = shardIndex;
+            return this;
+        }
+
+        public Builder endpoint(String endpoint) {
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        public ShardInfo build() {
+            return new ShardInfo(this);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.example.service;
+
+import org.example.template.DeviceCommandTemplate;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * 按分片流水线发送命令
+ * 每个分片（地域_分片序号）有独立的调度器，同一分片内最多depth台设备同时在途，
+ * 不同分片互不阻塞；同一设备的命令按提交顺序逐条发送，priority为urgent的命令优先；
+ * 排队命令达到上限时，异步提交的命令立即以 {@link RejectedExecutionException} 失败，
+ * 同步批量发送的提交线程则阻塞等待，形成背压。
+ * 开启替换时（默认关闭），同一设备同一命令类型的新命令会替换尚未发送的旧命令，
+ * 旧命令不发送，以status为SUPERSEDED的响应结束。
+ * 失败的命令按重试策略在设备的发送顺序内重试，退避等待期间不占用发送线程，重试结束后才发送该设备的下一条命令
+ */
+class ShardedCommandSender {
+
+    // 被替换而未发送的命令的响应状态
+    static final String STATUS_SUPERSEDED = "SUPERSEDED";
+
+    private final BiFunction<DeviceCommandTemplate, Executor, CompletableFuture<CommandResponse>> sender;
+    private final RegionShardingService shardingService;
+    private final int depth;
+    private final int queueCapacity;
+    private final boolean supersedePending;
+
+    // 全局分片编号 -> 调度器，首次使用时创建
+    private final AtomicReferenceArray<DeviceOrderedScheduler> shardSchedulers;
+    // 设备ID|命令类型 -> 最近提交的命令
+    private final Map<String, PendingCommand> latestPending = new ConcurrentHashMap<>();
+    private final LongAdder superseded = new LongAdder();
+
+    /**
+     * @param sender 单条命令的异步发送方式，在分片的工作线程上调用，第二个参数为分片的工作线程，
+     *               等待（例如配额）后的阻塞调用应在其上继续；返回的future完成前设备不发送下一条命令
+     * @param depth 每个分片同时在途的设备数
+     * @param queueCapacity 每个分片排队等待的命令数上限
+     * @param supersedePending 新命令是否替换同一设备同类型尚未发送的旧命令
+     */
+    ShardedCommandSender(BiFunction<DeviceCommandTemplate, Executor, CompletableFuture<CommandResponse>> sender,
+                         RegionShardingService shardingService, int depth, int queueCapacity,
+                         boolean supersedePending) {
+        this.sender = sender;
+        this.shardingService = shardingService;
+        this.depth = depth;
+        this.queueCapacity = queueCapacity;
+        this.supersedePending = supersedePending;
+        this.shardSchedulers = new AtomicReferenceArray<>(shardingService.getShardTotal());
+    }
+
+    /**
+     * 提交一条命令到其所在分片，不重试，发送异常通过返回的future传递
+     */
+    CompletableFuture<CommandResponse> send(DeviceCommandTemplate command) {
+        return send(command, CommandRetryPolicy.NONE);
+    }
+
+    /**
+     * 提交一条命令到其所在分片，不等待排队名额，失败时按重试策略在设备的发送顺序内重试；
+     * 最终失败的异常通过返回的future传递
+     */
+    CompletableFuture<CommandResponse> send(DeviceCommandTemplate command, CommandRetryPolicy retryPolicy) {
+        return send(command, retryPolicy, false);
+    }
+
+    /**
+     * @param waitForCapacity 分片队列已满时是否阻塞等待排队名额，否则返回的future立即以异常结束
+     */
+    CompletableFuture<CommandResponse> send(DeviceCommandTemplate command, CommandRetryPolicy retryPolicy,
+                                            boolean waitForCapacity) {
+        DeviceOrderedScheduler scheduler = schedulerOf(command);
+
+        if (!supersedePending) {
+            return submit(scheduler, command, waitForCapacity, () -> attempt(scheduler, command, 1, retryPolicy));
+        }
+
+        String key = command.getDeviceId() + "|" + command.getCommandType();
+        PendingCommand pending = new PendingCommand();
+        PendingCommand previous = latestPending.put(key, pending);
+        if (previous != null && previous.started.compareAndSet(false, true)) {
+            // 旧命令还在排队，不再发送
+            superseded.increment();
+            previous.result.complete(CommandResponse.builder()
+                    .status(STATUS_SUPERSEDED)
+                    .timestamp(System.currentTimeMillis())
+                    .build());
+        }
+
+        submit(scheduler, command, waitForCapacity, () -> {
+            if (!pending.started.compareAndSet(false, true)) {
+                // 已被替换，不占用设备
+                return CompletableFuture.completedFuture(null);
+            }
+            latestPending.remove(key, pending);
+            return attempt(scheduler, command, 1, retryPolicy);
+        }).whenComplete((response, e) -> {
+            if (e != null) {
+                latestPending.remove(key, pending);
+                pending.result.completeExceptionally(e);
+            } else if (response != null) {
+                pending.result.complete(response);
+            }
+        });
+        return pending.result;
+    }
+
+    /**
+     * 延迟后重试一条首次发送已在其他途径（例如批量命令任务）失败的命令
+     * 重试不参与替换，也不等待排队名额：分片队列已满时返回的future立即以异常结束
+     * @param attempt 本次重试是第几次尝试
+     */
+    CompletableFuture<CommandResponse> retryLater(DeviceCommandTemplate command, int attempt, long delayMillis,
+                                                  CommandRetryPolicy retryPolicy) {
+        DeviceOrderedScheduler scheduler = schedulerOf(command);
+        return scheduler.trySubmitAsync(command.getDeviceId(), priorityOf(command),
+                () -> attemptLater(scheduler, command, attempt, delayMillis, retryPolicy));
+    }
+
+    private static <T> CompletableFuture<T> submit(DeviceOrderedScheduler scheduler, DeviceCommandTemplate command,
+                                                   boolean waitForCapacity,
+                                                   Supplier<? extends CompletionStage<T>> task) {
+        return waitForCapacity
+                ? scheduler.submitAsync(command.getDeviceId(), priorityOf(command), task)
+                : scheduler.trySubmitAsync(command.getDeviceId(), priorityOf(command), task);
+    }
+
+    /**
+     * 在设备的发送顺序内执行第attempt次尝试，失败时按策略安排下一次
+     */
+    private CompletableFuture<CommandResponse> attempt(DeviceOrderedScheduler scheduler, DeviceCommandTemplate command,
+                                                       int attempt, CommandRetryPolicy retryPolicy) {
+        CompletableFuture<CommandResponse> sent;
+        try {
+            sent = sender.apply(command, scheduler.executor());
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        return sent.handle((response, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            long delay = retryPolicy.retryDelayMillis(command, attempt, cause);
+            if (delay < 0) {
+                return CompletableFuture.<CommandResponse>failedFuture(cause);
+            }
+            return attemptLater(scheduler, command, attempt + 1, delay, retryPolicy);
+        }).thenCompose(result -> result);
+    }
+
+    private CompletableFuture<CommandResponse> attemptLater(DeviceOrderedScheduler scheduler,
+                                                            DeviceCommandTemplate command, int attempt,
+                                                            long delayMillis, CommandRetryPolicy retryPolicy) {
+        return scheduler.runLater(delayMillis, () -> attempt(scheduler, command, attempt, retryPolicy))
+                .thenCompose(result -> result);
+    }
+
+    private static DeviceOrderedScheduler.Priority priorityOf(DeviceCommandTemplate command) {
+        return "urgent".equalsIgnoreCase(command.getPriority())
+                ? DeviceOrderedScheduler.Priority.URGENT : DeviceOrderedScheduler.Priority.NORMAL;
+    }
+
+    private DeviceOrderedScheduler schedulerOf(DeviceCommandTemplate command) {
+        return schedulerOf(shardingService.routeShardId(command.getDeviceId(), command.getRegion()));
+    }
+
+    private DeviceOrderedScheduler schedulerOf(int shardId) {
+        DeviceOrderedScheduler scheduler = shardSchedulers.get(shardId);
+        if (scheduler != null) {
+            return scheduler;
+        }
+        synchronized (shardSchedulers) {
+            scheduler = shardSchedulers.get(shardId);
+            if (scheduler == null) {
+                String shardKey = shardingService.getShardKey(shardId);
+                log.info("创建分片命令调度器：shard={}, depth={}, queue={}", shardKey, depth, queueCapacity);
+                scheduler = new DeviceOrderedScheduler("command-" + shardKey, depth, queueCapacity);
+                shardSchedulers.set(shardId, scheduler);
+            }
+            return scheduler;
+        }
+    }
+
+    /**
+     * 被新命令替换而未发送的命令数
+     */
+    long getSupersededCount() {
+        return superseded.sum();
+    }
+
+    void shutdown() {
+        for (int i = 0; i < shardSchedulers.length(); i++) {
+            DeviceOrderedScheduler scheduler = shardSchedulers.get(i);
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+        }
+    }
+
+    private static class PendingCommand {
+        // 已开始发送或已被替换
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CompletableFuture<CommandResponse> result = new CompletableFuture<>();
+    }
+}
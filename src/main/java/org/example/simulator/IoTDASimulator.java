@@ -0,0 +1,485 @@
+package org.example.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.batch.ProvisioningConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地IoTDA模拟服务
+ * 以内嵌HTTP服务模拟本项目用到的IoTDA REST接口，用于在没有AK/SK和云端环境时压测设备创建和命令下发：
+ * <ul>
+ *     <li>POST   /v5/iot/{project_id}/devices                       createDevice</li>
+ *     <li>GET    /v5/iot/{project_id}/devices/{device_id}           showDevice</li>
+ *     <li>DELETE /v5/iot/{project_id}/devices/{device_id}           deleteDevice</li>
+ *     <li>POST   /v5/iot/{project_id}/devices/{device_id}/commands  createCommand</li>
+ *     <li>GET    /v5/iot/{project_id}/products                      listProducts（支持limit/marker分页）</li>
+ * </ul>
+ * 每个接口可配置响应延迟分布、错误注入比例和每秒请求上限（超限返回429）；
+ * 延迟通过定时线程延后发送响应实现，不占用处理线程，单机即可支撑大量并发请求
+ *
+ * SDK客户端通过 withEndpoint("http://127.0.0.1:端口") 和 BasicCredentials.withProjectId 指向模拟服务
+ */
+public class IoTDASimulator {
+
+    private static final Logger logger = LoggerFactory.getLogger(IoTDASimulator.class);
+
+    private static final String API_PREFIX = "/v5/iot/";
+    private static final int MAX_PAGE_LIMIT = 50;
+
+    private final ProvisioningConfig config;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // deviceId -> 设备
+    private final Map<String, Device> devices = new ConcurrentHashMap<>();
+    // nodeId -> deviceId，用于重复注册检查
+    private final Map<String, String> nodeIds = new ConcurrentHashMap<>();
+    private final List<Map<String, Object>> products = new ArrayList<>();
+
+    private final Map<String, Api> apis = new HashMap<>();
+
+    private HttpServer server;
+    private ExecutorService handlerExecutor;
+    private ScheduledExecutorService responseScheduler;
+
+    /**
+     * 配置项（均以simulator.为前缀）：
+     * port 监听端口，0表示随机端口；threads 处理线程数；products 预置产品数量；
+     * latency.distribution 延迟分布 fixed|uniform|exponential；latency.mean.ms 平均延迟；latency.max.ms 延迟上限；
+     * error.rate 注入错误的比例；error.status 注入错误的HTTP状态码；rate.limit 每个接口每秒请求上限，0表示不限；
+     * 以上延迟、错误、限流配置可以按接口覆盖，例如 simulator.createDevice.error.rate=0.05
+     */
+    public IoTDASimulator(ProvisioningConfig config) {
+        this.config = config;
+        for (String name : new String[]{"createDevice", "showDevice", "deleteDevice", "createCommand", "listProducts"}) {
+            apis.put(name, new Api(name, config));
+        }
+
+        int productCount = config.getInt("simulator.products", 120);
+        for (int i = 1; i <= productCount; i++) {
+            Map<String, Object> product = new LinkedHashMap<>();
+            product.put("app_id", "simulator");
+            product.put("product_id", String.format("sim-product-%04d", i));
+            // 最后一个产品模拟水表产品，验证分页查找
+            product.put("name", i == productCount ? "OpenHarmony智能水表" : "模拟产品-" + i);
+            product.put("device_type", i == productCount ? "WaterMeter" : "Sensor");
+            product.put("protocol_type", "MQTT");
+            product.put("data_format", "json");
+            products.add(product);
+        }
+    }
+
+    /**
+     * 启动参数示例：--simulator.port=18080 --simulator.latency.mean.ms=50 --simulator.rate.limit=2000
+     */
+    public static void main(String[] args) throws IOException {
+        IoTDASimulator simulator = new IoTDASimulator(ProvisioningConfig.load(args));
+        simulator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop));
+    }
+
+    /**
+     * 启动模拟服务
+     * @return 实际监听端口
+     */
+    public int start() throws IOException {
+        int threads = config.getInt("simulator.threads", Runtime.getRuntime().availableProcessors() * 2);
+        handlerExecutor = Executors.newFixedThreadPool(threads);
+        responseScheduler = Executors.newScheduledThreadPool(Math.max(2, threads / 2));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", config.getInt("simulator.port", 18080)), 1024);
+        server.setExecutor(handlerExecutor);
+        server.createContext(API_PREFIX, this::handle);
+        server.start();
+
+        int port = server.getAddress().getPort();
+        logger.info("IoTDA模拟服务已启动: {}，预置产品{}个", getEndpoint(), products.size());
+        return port;
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            handlerExecutor.shutdownNow();
+            responseScheduler.shutdownNow();
+            logger.info("IoTDA模拟服务已停止，请求统计: {}", getStatistics());
+        }
+    }
+
+    /**
+     * SDK客户端使用的endpoint
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public int getDeviceCount() {
+        return devices.size();
+    }
+
+    /**
+     * 各接口的请求数、注入错误数和限流数
+     */
+    public Map<String, String> getStatistics() {
+        Map<String, String> statistics = new LinkedHashMap<>();
+        for (Api api : apis.values()) {
+            statistics.put(api.name, String.format("请求%d，错误%d，限流%d",
+                    api.requests.sum(), api.injectedErrors.sum(), api.throttled.sum()));
+        }
+        return statistics;
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            route(exchange);
+        } catch (Exception e) {
+            logger.warn("处理请求失败: {} {}: {}", exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage());
+            respond(exchange, 0, 500, error("SIMULATOR.INTERNAL", e.getMessage()));
+        }
+    }
+
+    /**
+     * 路径格式：/v5/iot/{project_id}/devices[/{device_id}[/commands]] 或 /v5/iot/{project_id}/products
+     */
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] parts = exchange.getRequestURI().getPath().substring(API_PREFIX.length()).split("/");
+
+        if (parts.length == 2 && "products".equals(parts[1]) && "GET".equals(method)) {
+            call(exchange, apis.get("listProducts"), () -> listProducts(exchange.getRequestURI()));
+        } else if (parts.length == 2 && "devices".equals(parts[1]) && "POST".equals(method)) {
+            JsonNode body = readBody(exchange);
+            call(exchange, apis.get("createDevice"), () -> createDevice(body));
+        } else if (parts.length == 3 && "devices".equals(parts[1]) && "GET".equals(method)) {
+            call(exchange, apis.get("showDevice"), () -> showDevice(parts[2]));
+        } else if (parts.length == 3 && "devices".equals(parts[1]) && "DELETE".equals(method)) {
+            call(exchange, apis.get("deleteDevice"), () -> deleteDevice(parts[2]));
+        } else if (parts.length == 4 && "devices".equals(parts[1]) && "commands".equals(parts[3])
+                && "POST".equals(method)) {
+            JsonNode body = readBody(exchange);
+            call(exchange, apis.get("createCommand"), () -> createCommand(parts[2], body));
+        } else {
+            respond(exchange, 0, 404, error("SIMULATOR.NOT_FOUND", "模拟服务不支持该接口: " + method + " "
+                    + exchange.getRequestURI().getPath()));
+        }
+    }
+
+    /**
+     * 依次执行限流、错误注入和业务处理，响应按延迟分布延后发送
+     */
+    private void call(HttpExchange exchange, Api api, Handler handler) {
+        api.requests.increment();
+        long delay = api.latency.nextMillis();
+
+        if (!api.rateLimiter.tryAcquire()) {
+            api.throttled.increment();
+            respond(exchange, delay, 429, error("IOTDA.000016", "请求过于频繁，已被限流"));
+            return;
+        }
+        if (api.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < api.errorRate) {
+            api.injectedErrors.increment();
+            respond(exchange, delay, api.errorStatus, error("SIMULATOR.INJECTED", "模拟服务注入的错误"));
+            return;
+        }
+
+        Result result = handler.handle();
+        respond(exchange, delay, result.status, result.body);
+    }
+
+    private Result createDevice(JsonNode body) {
+        String nodeId = text(body, "node_id");
+        String productId = text(body, "product_id");
+        if (nodeId == null || productId == null) {
+            return new Result(400, error("IOTDA.000002", "node_id和product_id不能为空"));
+        }
+
+        String deviceId = productId + "_" + nodeId;
+        if (nodeIds.putIfAbsent(nodeId, deviceId) != null) {
+            return new Result(409, error("IOTDA.014010", "节点ID已存在: " + nodeId));
+        }
+        Device device = new Device(deviceId, nodeId, text(body, "device_name"), productId,
+                text(body, "description"), Instant.now().toString());
+        devices.put(deviceId, device);
+
+        Map<String, Object> response = device.toMap();
+        Map<String, Object> authInfo = new LinkedHashMap<>();
+        authInfo.put("auth_type", "SECRET");
+        authInfo.put("secret", text(body, "secret"));
+        response.put("auth_info", authInfo);
+        return new Result(201, response);
+    }
+
+    private Result showDevice(String deviceId) {
+        Device device = devices.get(deviceId);
+        return device != null
+                ? new Result(200, device.toMap())
+                : new Result(404, error("IOTDA.014000", "设备不存在: " + deviceId));
+    }
+
+    private Result deleteDevice(String deviceId) {
+        Device device = devices.remove(deviceId);
+        if (device == null) {
+            return new Result(404, error("IOTDA.014000", "设备不存在: " + deviceId));
+        }
+        nodeIds.remove(device.nodeId);
+        return new Result(204, null);
+    }
+
+    private Result createCommand(String deviceId, JsonNode body) {
+        if (!devices.containsKey(deviceId)) {
+            return new Result(404, error("IOTDA.014000", "设备不存在: " + deviceId));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("device_id", deviceId);
+        response.put("command_id", UUID.randomUUID().toString());
+        Map<String, Object> commandResponse = new LinkedHashMap<>();
+        commandResponse.put("result_code", 0);
+        commandResponse.put("response_name", text(body, "command_name"));
+        response.put("response", commandResponse);
+        return new Result(200, response);
+    }
+
+    /**
+     * marker为上一页最后一个产品的序号
+     */
+    private Result listProducts(URI uri) {
+        Map<String, String> query = parseQuery(uri.getRawQuery());
+        int limit = Math.min(MAX_PAGE_LIMIT, Integer.parseInt(query.getOrDefault("limit", "10")));
+        int from = query.containsKey("marker") ? Integer.parseInt(query.get("marker")) : 0;
+        int to = Math.min(products.size(), from + limit);
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("count", products.size());
+        page.put("marker", Integer.toString(to));
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("products", from < to ? products.subList(from, to) : new ArrayList<>());
+        response.put("page", page);
+        return new Result(200, response);
+    }
+
+    private void respond(HttpExchange exchange, long delayMillis, int status, Object body) {
+        Runnable send = () -> {
+            try (HttpExchange ex = exchange) {
+                byte[] bytes = body != null ? mapper.writeValueAsBytes(body) : new byte[0];
+                ex.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+                ex.getResponseHeaders().set("X-Request-Id", UUID.randomUUID().toString());
+                ex.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+                if (bytes.length > 0) {
+                    try (OutputStream out = ex.getResponseBody()) {
+                        out.write(bytes);
+                    }
+                }
+            } catch (IOException e) {
+                logger.debug("发送响应失败: {}", e.getMessage());
+            }
+        };
+        if (delayMillis > 0) {
+            responseScheduler.schedule(send, delayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            send.run();
+        }
+    }
+
+    private JsonNode readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return mapper.readTree(in);
+        }
+    }
+
+    private static String text(JsonNode body, String field) {
+        JsonNode node = body != null ? body.get(field) : null;
+        return node != null && !node.isNull() ? node.asText() : null;
+    }
+
+    private static Map<String, Object> error(String code, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error_code", code);
+        error.put("error_msg", message);
+        return error;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(pair.substring(0, eq),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Result handle();
+    }
+
+    private static class Result {
+        private final int status;
+        private final Object body;
+
+        Result(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * 单个接口的模拟参数和统计
+     */
+    private static class Api {
+        private final String name;
+        private final LatencyModel latency;
+        private final TokenBucket rateLimiter;
+        private final double errorRate;
+        private final int errorStatus;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder injectedErrors = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+
+        Api(String name, ProvisioningConfig config) {
+            this.name = name;
+            this.latency = new LatencyModel(
+                    setting(config, name, "latency.distribution", "fixed"),
+                    Long.parseLong(setting(config, name, "latency.mean.ms", "20")),
+                    Long.parseLong(setting(config, name, "latency.max.ms", "2000")));
+            this.rateLimiter = new TokenBucket(Long.parseLong(setting(config, name, "rate.limit", "0")));
+            this.errorRate = Double.parseDouble(setting(config, name, "error.rate", "0"));
+            this.errorStatus = Integer.parseInt(setting(config, name, "error.status", "500"));
+        }
+
+        /**
+         * 接口级配置 simulator.{接口}.{key} 优先于全局配置 simulator.{key}
+         */
+        private static String setting(ProvisioningConfig config, String api, String key, String defaultValue) {
+            return config.get("simulator." + api + "." + key, config.get("simulator." + key, defaultValue));
+        }
+    }
+
+    /**
+     * 响应延迟分布
+     */
+    private static class LatencyModel {
+        private final String distribution;
+        private final long meanMillis;
+        private final long maxMillis;
+
+        LatencyModel(String distribution, long meanMillis, long maxMillis) {
+            if (!"fixed".equals(distribution) && !"uniform".equals(distribution)
+                    && !"exponential".equals(distribution)) {
+                throw new IllegalArgumentException("不支持的延迟分布: " + distribution + "，可选值为fixed、uniform、exponential");
+            }
+            this.distribution = distribution;
+            this.meanMillis = meanMillis;
+            this.maxMillis = maxMillis;
+        }
+
+        long nextMillis() {
+            if (meanMillis <= 0) {
+                return 0;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long value;
+            if ("uniform".equals(distribution)) {
+                value = random.nextLong(meanMillis * 2 + 1);
+            } else if ("exponential".equals(distribution)) {
+                // 指数分布模拟长尾延迟
+                value = (long) (-meanMillis * Math.log(1 - random.nextDouble()));
+            } else {
+                value = meanMillis;
+            }
+            return Math.min(value, maxMillis);
+        }
+    }
+
+    /**
+     * 令牌桶限流，桶容量为每秒请求上限
+     */
+    private static class TokenBucket {
+        private final long ratePerSecond;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        TokenBucket(long ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+            this.tokens = ratePerSecond;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (ratePerSecond <= 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(ratePerSecond, tokens + (now - lastRefillNanos) * ratePerSecond / 1e9);
+            lastRefillNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+
+    private static class Device {
+        private final String deviceId;
+        private final String nodeId;
+        private final String deviceName;
+        private final String productId;
+        private final String description;
+        private final String createTime;
+
+        Device(String deviceId, String nodeId, String deviceName, String productId, String description,
+               String createTime) {
+            this.deviceId = deviceId;
+            this.nodeId = nodeId;
+            this.deviceName = deviceName;
+            this.productId = productId;
+            this.description = description;
+            this.createTime = createTime;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("app_id", "simulator");
+            map.put("device_id", deviceId);
+            map.put("node_id", nodeId);
+            map.put("device_name", deviceName);
+            map.put("product_id", productId);
+            map.put("node_type", "GATEWAY");
+            map.put("status", "ONLINE");
+            map.put("description", description);
+            map.put("create_time", createTime);
+            map.put("active_time", createTime);
+            return map;
+        }
+    }
+}
@@ -27,6 +27,13 @@ public class DeviceCommandTemplate {
     @JsonProperty("region")
     private String region; // 华北/华东
 
+    @JsonProperty("priority")
+    private String priority; // urgent/normal，默认normal
+
+    @Size(max = 128, message = "幂等键长度不能超过128")
+    @JsonProperty("idempotency_key")
+    private String idempotencyKey; // 可选，未提供时按设备ID、命令类型和参数去重
+
     // getter/setter省略...
 
 
@@ -46,14 +53,32 @@ public class DeviceCommandTemplate {
         return region;
     }
 
+    public String getPriority() {
+        return priority;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
     public static class CommandParameters {
         @DecimalMin(value = "0.0", message = "数值不能为负")
         @DecimalMax(value = "100.0", message = "数值不能超过100")
+        @JsonProperty("value")
         private Double value;
 
         @Pattern(regexp = "^(on|off|auto)$", message = "状态值只能是on/off/auto")
+        @JsonProperty("status")
         private String status;
 
         // getter/setter省略...
+
+        public Double getValue() {
+            return value;
+        }
+
+        public String getStatus() {
+            return status;
+        }
     }
 }
@@ -0,0 +1,123 @@
+import org.example.batch.BatchTaskGateway;
+import org.example.batch.BatchTaskProvisioner;
+import org.example.batch.BatchWaterMeterCreator;
+import org.example.batch.ProvisioningListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * BatchTaskProvisioner测试类
+ * 使用本地桩替代IoTDA批量任务接口，无需网络即可验证文件生成、状态轮询和对账逻辑
+ */
+public class BatchTaskProvisionerTest {
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== 批量任务设备注册测试 ===");
+
+        Path workDir = Files.createTempDirectory("batch_tasks");
+        StubBatchTaskGateway gateway = new StubBatchTaskGateway();
+        BatchTaskProvisioner provisioner = new BatchTaskProvisioner(
+                gateway, "product-001", index -> "0123456789abcdef", workDir, 120, 10, 10_000);
+
+        List<BatchWaterMeterCreator.WaterMeterDevice> created = new ArrayList<>();
+        List<Integer> failed = new ArrayList<>();
+
+        int createdCount = provisioner.provision(1, 500, new ProvisioningListener() {
+            @Override
+            public void onDeviceCreated(BatchWaterMeterCreator.WaterMeterDevice device) {
+                created.add(device);
+            }
+
+            @Override
+            public void onDeviceFailed(int index, String nodeId, String reason) {
+                failed.add(index);
+            }
+        });
+
+        // 500个设备按每任务120个拆分，应提交5个任务
+        check("提交任务数", gateway.tasks.size() == 5);
+        // 多个任务的状态应在同一次调用中返回
+        check("状态查询调用次数", gateway.statusCalls.get() == 2);
+        // 序号为7的倍数的设备在桩中注册失败
+        check("失败设备数", failed.size() == 500 / 7);
+        check("成功设备数", createdCount == 500 - 500 / 7 && created.size() == createdCount);
+        check("设备ID回填", created.stream().allMatch(d -> ("id-" + d.getNodeId()).equals(d.getDeviceId())));
+        // 注册文件含密钥明文，上传后不应留在工作目录
+        try (Stream<Path> files = Files.list(workDir)) {
+            check("注册文件已删除", files.count() == 0);
+        }
+
+        System.out.println("\n=== 测试完成 ===");
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println(name + ": " + (passed ? "通过 ✅" : "失败 ❌"));
+    }
+
+    /**
+     * 本地桩：第一次查询时任务处理中，第二次查询时任务结束
+     */
+    private static class StubBatchTaskGateway implements BatchTaskGateway {
+
+        private final Map<String, List<String>> files = new HashMap<>();
+        private final Map<String, List<String>> tasks = new HashMap<>();
+        private final AtomicInteger statusCalls = new AtomicInteger();
+
+        @Override
+        public String uploadFile(Path file) {
+            try {
+                List<String> lines = Files.readAllLines(file);
+                String fileId = "file-" + files.size();
+                files.put(fileId, lines.subList(1, lines.size()));
+                return fileId;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String createDeviceTask(String taskName, String fileId) {
+            String taskId = "task-" + tasks.size();
+            List<String> nodeIds = new ArrayList<>();
+            for (String line : files.get(fileId)) {
+                nodeIds.add(line.substring(0, line.indexOf(',')));
+            }
+            tasks.put(taskId, nodeIds);
+            return taskId;
+        }
+
+        @Override
+        public Map<String, String> listTaskStatuses(Collection<String> taskIds) {
+            String status = statusCalls.incrementAndGet() == 1 ? "Processing" : "PartialSuccess";
+            Map<String, String> statuses = new HashMap<>();
+            taskIds.forEach(taskId -> statuses.put(taskId, status));
+            return statuses;
+        }
+
+        @Override
+        public TaskDetailPage showTaskDetails(String taskId, String marker) {
+            List<String> nodeIds = tasks.get(taskId);
+            int from = marker == null ? 0 : Integer.parseInt(marker);
+            int to = Math.min(from + 50, nodeIds.size());
+
+            List<DeviceTaskResult> results = new ArrayList<>();
+            for (String nodeId : nodeIds.subList(from, to)) {
+                int index = Integer.parseInt(nodeId.substring(nodeId.indexOf('_') + 1));
+                boolean success = index % 7 != 0;
+                results.add(new DeviceTaskResult(nodeId, success,
+                        success ? "id-" + nodeId : null, success ? null : "IOTDA.014000 - 设备已存在"));
+            }
+            return new TaskDetailPage(results, to < nodeIds.size() ? String.valueOf(to) : null);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.service.CommandIdempotencyGuard;
+import org.example.service.CommandResponse;
+import org.example.template.DeviceCommandTemplate;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CommandIdempotencyGuard测试类
+ * 验证按内容去重只与设备最近一次命令比较：关→开→关 的第二次关闭仍会下发；
+ * 以及带参数的命令按参数内容区分
+ */
+public class CommandIdempotencyGuardTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== 命令幂等保护测试 ===");
+
+        CommandIdempotencyGuard guard = new CommandIdempotencyGuard(60_000, 1000);
+        AtomicInteger sent = new AtomicInteger();
+
+        DeviceCommandTemplate off = command("meter0001", "valve_off", null, null);
+        DeviceCommandTemplate on = command("meter0001", "valve_on", null, null);
+
+        guard.execute(off, c -> send(sent));
+        guard.execute(off, c -> send(sent));
+        check("连续重复的关闭只下发一次", sent.get() == 1 && guard.getDuplicateCount() == 1);
+
+        guard.execute(on, c -> send(sent));
+        guard.execute(off, c -> send(sent));
+        check("关→开→关 的第二次关闭正常下发", sent.get() == 3);
+        check("第二次关闭未计为重复", guard.getDuplicateCount() == 1);
+
+        // 其他设备的命令不影响本设备的去重
+        guard.execute(command("meter0002", "valve_on", null, null), c -> send(sent));
+        guard.execute(off, c -> send(sent));
+        check("其他设备的命令不打断去重", sent.get() == 4 && guard.getDuplicateCount() == 2);
+
+        // 调用方提供的幂等键不受中间命令影响
+        DeviceCommandTemplate keyed = command("meter0003", "valve_off", null, "order-42");
+        guard.execute(keyed, c -> send(sent));
+        guard.execute(command("meter0003", "valve_on", null, null), c -> send(sent));
+        guard.execute(keyed, c -> send(sent));
+        check("幂等键重复时仍复用首次结果", sent.get() == 6 && guard.getDuplicateCount() == 3);
+
+        // 参数参与去重：相同参数复用，不同参数正常下发
+        String half = "{\"value\":50.0,\"status\":\"on\"}";
+        String full = "{\"value\":100.0,\"status\":\"on\"}";
+        guard.execute(command("meter0004", "set_valve", half, null), c -> send(sent));
+        guard.execute(command("meter0004", "set_valve", half, null), c -> send(sent));
+        check("参数相同的命令只下发一次", sent.get() == 7 && guard.getDuplicateCount() == 4);
+        guard.execute(command("meter0004", "set_valve", full, null), c -> send(sent));
+        check("参数不同的命令正常下发", sent.get() == 8 && guard.getDuplicateCount() == 4);
+
+        System.out.println("\n=== 测试完成 ===");
+    }
+
+    private static CommandResponse send(AtomicInteger sent) {
+        return CommandResponse.builder()
+                .commandId("cmd-" + sent.incrementAndGet())
+                .status("PENDING")
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+
+    private static DeviceCommandTemplate command(String deviceId, String commandType, String parameters,
+                                                 String idempotencyKey) throws IOException {
+        String json = String.format("{\"device_id\":\"%s\",\"command_type\":\"%s\"%s%s}", deviceId, commandType,
+                parameters != null ? ",\"parameters\":" + parameters : "",
+                idempotencyKey != null ? ",\"idempotency_key\":\"" + idempotencyKey + "\"" : "");
+        return MAPPER.readValue(json, DeviceCommandTemplate.class);
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println(name + ": " + (passed ? "通过 ✅" : "失败 ❌"));
+    }
+}
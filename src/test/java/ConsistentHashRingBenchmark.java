@@ -0,0 +1,96 @@
+import org.example.service.ConsistentHashRing;
+
+import java.util.Arrays;
+
+/**
+ * 一致性哈希环基准测试
+ * 统计查找耗时、各分片设备数的偏斜，以及分片数变化时迁移的设备比例，并与原取模方式对比
+ */
+public class ConsistentHashRingBenchmark {
+
+    private static final int DEVICES = 1_000_000;
+    private static final int VIRTUAL_NODES = 512;
+
+    public static void main(String[] args) {
+        System.out.println("=== 一致性哈希环基准测试 ===");
+
+        String[] deviceIds = new String[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            deviceIds[i] = String.format("watermeter_%08d", i);
+        }
+
+        ConsistentHashRing ring4 = new ConsistentHashRing("华东", 4, VIRTUAL_NODES);
+        ConsistentHashRing ring5 = new ConsistentHashRing("华东", 5, VIRTUAL_NODES);
+
+        // 查找耗时：预热后计时，结果累加防止被优化掉
+        long sink = 0;
+        for (int round = 0; round < 3; round++) {
+            for (String deviceId : deviceIds) {
+                sink += ring4.shardOf(deviceId);
+            }
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < 5; round++) {
+            for (String deviceId : deviceIds) {
+                sink += ring4.shardOf(deviceId);
+            }
+        }
+        double nanosPerLookup = (System.nanoTime() - start) / (5.0 * DEVICES);
+        System.out.printf("查找耗时：%.1f ns/次（%d个虚拟节点，sink=%d）%n", nanosPerLookup, 4 * VIRTUAL_NODES, sink);
+
+        // 分布偏斜：最大分片设备数 / 平均值
+        int[] counts = new int[4];
+        int[] moduloCounts = new int[4];
+        for (String deviceId : deviceIds) {
+            counts[ring4.shardOf(deviceId)]++;
+            moduloCounts[Math.floorMod(deviceId.hashCode(), 4)]++;
+        }
+        double skew = skew(counts);
+        System.out.printf("哈希环分布偏斜：%.3f，各分片：%s%n", skew, Arrays.toString(counts));
+        System.out.printf("取模分布偏斜：%.3f，各分片：%s%n", skew(moduloCounts), Arrays.toString(moduloCounts));
+
+        // 4 -> 5个分片时迁移的设备比例，理想值为1/5
+        int moved = 0;
+        int moduloMoved = 0;
+        for (String deviceId : deviceIds) {
+            if (ring4.shardOf(deviceId) != ring5.shardOf(deviceId)) {
+                moved++;
+            }
+            if (Math.floorMod(deviceId.hashCode(), 4) != Math.floorMod(deviceId.hashCode(), 5)) {
+                moduloMoved++;
+            }
+        }
+        double movedRatio = (double) moved / DEVICES;
+        System.out.printf("4->5分片迁移比例：哈希环 %.3f，取模 %.3f%n", movedRatio, (double) moduloMoved / DEVICES);
+
+        // 迁移的设备只能迁入新分片
+        boolean onlyToNewShard = true;
+        for (String deviceId : deviceIds) {
+            int before = ring4.shardOf(deviceId);
+            int after = ring5.shardOf(deviceId);
+            if (before != after && after != 4) {
+                onlyToNewShard = false;
+                break;
+            }
+        }
+
+        check("分布偏斜不超过10%", skew < 1.10);
+        check("迁移比例接近1/5", Math.abs(movedRatio - 0.2) < 0.05);
+        check("迁移的设备全部进入新分片", onlyToNewShard);
+        check("哈希值为负的设备ID也能定位分片", ring4.shardOf("polygenelubricants") >= 0);
+    }
+
+    private static double skew(int[] counts) {
+        int max = 0;
+        long total = 0;
+        for (int count : counts) {
+            max = Math.max(max, count);
+            total += count;
+        }
+        return max / ((double) total / counts.length);
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println(name + ": " + (passed ? "通过 ✅" : "失败 ❌"));
+    }
+}
@@ -0,0 +1,156 @@
+import org.example.service.DeviceOrderedScheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeviceOrderedScheduler测试类
+ * 验证同一设备按提交顺序执行、URGENT通道优先、异步任务重试期间占住设备，以及停止时排队任务以异常结束
+ */
+public class DeviceOrderedSchedulerTest {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== 按设备保序调度测试 ===");
+
+        testPerDeviceOrder();
+        testPriorityLanes();
+        testAsyncTaskHoldsDevice();
+        testShutdownFailsQueued();
+
+        System.out.println("\n=== 测试完成 ===");
+    }
+
+    /**
+     * 多个工作线程并发执行时，每台设备的任务仍按提交顺序执行且不重叠
+     */
+    private static void testPerDeviceOrder() {
+        DeviceOrderedScheduler scheduler = new DeviceOrderedScheduler("order-test", 8, 10_000);
+        Map<String, List<Integer>> executed = new ConcurrentHashMap<>();
+        Map<String, Boolean> running = new ConcurrentHashMap<>();
+        List<Boolean> overlaps = Collections.synchronizedList(new ArrayList<>());
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int seq = 0; seq < 200; seq++) {
+            for (int device = 0; device < 20; device++) {
+                String deviceId = "device-" + device;
+                int value = seq;
+                futures.add(scheduler.submit(deviceId, DeviceOrderedScheduler.Priority.NORMAL, () -> {
+                    if (running.put(deviceId, Boolean.TRUE) != null) {
+                        overlaps.add(Boolean.TRUE);
+                    }
+                    executed.computeIfAbsent(deviceId, k -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(value);
+                    running.remove(deviceId);
+                    return value;
+                }));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        boolean ordered = executed.size() == 20 && executed.values().stream().allMatch(values -> {
+            for (int i = 0; i < values.size(); i++) {
+                if (values.get(i) != i) {
+                    return false;
+                }
+            }
+            return values.size() == 200;
+        });
+        check("同一设备按提交顺序执行", ordered);
+        check("同一设备任务不并发执行", overlaps.isEmpty());
+        // future完成后工作线程才回收设备队列，稍等片刻
+        long deadline = System.currentTimeMillis() + 1000;
+        while (scheduler.getActiveDevices() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        check("执行完后回收设备队列", scheduler.getActiveDevices() == 0);
+        scheduler.shutdown();
+    }
+
+    /**
+     * 单个工作线程被占住时排队：URGENT设备先于NORMAL设备调度，同一设备内URGENT排在NORMAL之前
+     */
+    private static void testPriorityLanes() throws InterruptedException {
+        DeviceOrderedScheduler scheduler = new DeviceOrderedScheduler("priority-test", 1, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<Object> blocker = scheduler.submit("blocker", DeviceOrderedScheduler.Priority.NORMAL, () -> {
+            started.countDown();
+            return await(release);
+        });
+        started.await(5, TimeUnit.SECONDS);
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        futures.add(scheduler.submit("a", DeviceOrderedScheduler.Priority.NORMAL, () -> order.add("a-normal")));
+        futures.add(scheduler.submit("b", DeviceOrderedScheduler.Priority.NORMAL, () -> order.add("b-normal")));
+        futures.add(scheduler.submit("b", DeviceOrderedScheduler.Priority.URGENT, () -> order.add("b-urgent")));
+        futures.add(scheduler.submit("c", DeviceOrderedScheduler.Priority.URGENT, () -> order.add("c-urgent")));
+        release.countDown();
+        blocker.join();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        // b因有紧急任务被提升，与c按进入紧急通道的先后执行；a最后
+        check("紧急通道优先调度", order.equals(List.of("b-urgent", "c-urgent", "a-normal", "b-normal")));
+        scheduler.shutdown();
+    }
+
+    /**
+     * 异步任务延迟重试期间设备不执行后续任务，其他设备照常执行
+     */
+    private static void testAsyncTaskHoldsDevice() {
+        DeviceOrderedScheduler scheduler = new DeviceOrderedScheduler("async-test", 2, 100);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<Boolean> retried = scheduler.submitAsync("a", DeviceOrderedScheduler.Priority.NORMAL,
+                () -> scheduler.runLater(100, () -> order.add("a-retry")));
+        CompletableFuture<Boolean> next = scheduler.submit("a", DeviceOrderedScheduler.Priority.NORMAL,
+                () -> order.add("a-next"));
+        CompletableFuture<Boolean> other = scheduler.submit("b", DeviceOrderedScheduler.Priority.NORMAL,
+                () -> order.add("b"));
+        CompletableFuture.allOf(retried, next, other).join();
+
+        check("重试完成前不执行同设备后续任务", order.equals(List.of("b", "a-retry", "a-next")));
+        scheduler.shutdown();
+    }
+
+    /**
+     * 停止时尚未执行的任务以异常结束，调用方的join不会一直等待
+     */
+    private static void testShutdownFailsQueued() throws Exception {
+        DeviceOrderedScheduler scheduler = new DeviceOrderedScheduler("shutdown-test", 1, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        scheduler.submit("blocker", DeviceOrderedScheduler.Priority.NORMAL, () -> {
+            started.countDown();
+            return await(release);
+        });
+        started.await(5, TimeUnit.SECONDS);
+        CompletableFuture<String> queued = scheduler.submit("a", DeviceOrderedScheduler.Priority.NORMAL, () -> "a");
+        scheduler.shutdown();
+        CompletableFuture<String> late = scheduler.submit("b", DeviceOrderedScheduler.Priority.NORMAL, () -> "b");
+
+        check("停止时排队任务以异常结束", queued.isCompletedExceptionally());
+        check("停止后提交的任务以异常结束", late.isCompletedExceptionally());
+        release.countDown();
+    }
+
+    private static Object await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println(name + ": " + (passed ? "通过 ✅" : "失败 ❌"));
+    }
+}
@@ -0,0 +1,123 @@
+import com.huaweicloud.sdk.core.auth.BasicCredentials;
+import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+import com.huaweicloud.sdk.iotda.v5.IoTDAClient;
+import com.huaweicloud.sdk.iotda.v5.model.*;
+import org.example.batch.ProductCatalog;
+import org.example.batch.ProvisioningConfig;
+import org.example.simulator.IoTDASimulator;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * IoTDA模拟服务测试类
+ * 使用真实SDK客户端访问本地模拟服务，验证设备创建、查询、命令下发、产品分页和错误注入，
+ * 并输出本机创建设备的吞吐量。参数示例：--devices=100000 --threads=64
+ */
+public class IoTDASimulatorTest {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== IoTDA模拟服务测试 ===");
+
+        ProvisioningConfig options = ProvisioningConfig.load(args);
+        int deviceCount = options.getInt("devices", 2000);
+        int threads = options.getInt("threads", 16);
+
+        IoTDASimulator simulator = new IoTDASimulator(ProvisioningConfig.load(new String[]{
+                "--simulator.port=0", "--simulator.latency.distribution=exponential", "--simulator.latency.mean.ms=5"}));
+        simulator.start();
+        try {
+            IoTDAClient client = newClient(simulator.getEndpoint());
+
+            // 并发创建设备并统计吞吐量
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            AtomicInteger created = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 1; i <= deviceCount; i++) {
+                String nodeId = String.format("watermeter_%04d", i);
+                futures.add(executor.submit(() -> {
+                    client.createDevice(new CreateDeviceRequest().withBody(new CreateDevice()
+                            .withProductId("sim-product-0001")
+                            .withNodeId(nodeId)
+                            .withDeviceName(nodeId)
+                            .withSecret("0123456789abcdef")));
+                    created.incrementAndGet();
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            executor.shutdown();
+            System.out.printf("创建%d个设备耗时%.2f秒，%.0f个/秒%n", deviceCount, seconds, deviceCount / seconds);
+            check("设备创建", created.get() == deviceCount && simulator.getDeviceCount() == deviceCount);
+
+            String deviceId = "sim-product-0001_watermeter_0001";
+            ShowDeviceResponse device = client.showDevice(new ShowDeviceRequest().withDeviceId(deviceId));
+            check("设备查询", "watermeter_0001".equals(device.getNodeId()));
+
+            CreateCommandResponse command = client.createCommand(new CreateCommandRequest()
+                    .withDeviceId(deviceId)
+                    .withBody(new DeviceCommandRequest().withServiceId("WaterMeter").withCommandName("OPEN_VALVE")));
+            check("命令下发", command.getCommandId() != null);
+
+            // 水表产品是120个预置产品中的最后一个，需要翻页才能找到
+            ProductCatalog catalog = new ProductCatalog(client,
+                    Files.createTempDirectory("catalog").resolve("products.cache"), 0, simulator.getEndpoint());
+            check("产品分页查找", "sim-product-0120".equals(catalog.findByName("OpenHarmony智能水表")));
+
+            check("重复节点ID", statusOf(() -> client.createDevice(new CreateDeviceRequest().withBody(
+                    new CreateDevice().withProductId("sim-product-0001").withNodeId("watermeter_0001")))) == 409);
+        } finally {
+            simulator.stop();
+        }
+
+        // 错误注入和限流
+        IoTDASimulator faulty = new IoTDASimulator(ProvisioningConfig.load(new String[]{
+                "--simulator.port=0", "--simulator.latency.mean.ms=0",
+                "--simulator.showDevice.error.rate=1", "--simulator.createCommand.rate.limit=1"}));
+        faulty.start();
+        try {
+            IoTDAClient client = newClient(faulty.getEndpoint());
+            check("错误注入", statusOf(() -> client.showDevice(new ShowDeviceRequest().withDeviceId("any"))) == 500);
+
+            CreateCommandRequest request = new CreateCommandRequest().withDeviceId("any")
+                    .withBody(new DeviceCommandRequest().withCommandName("OPEN_VALVE"));
+            statusOf(() -> client.createCommand(request));
+            check("限流", statusOf(() -> client.createCommand(request)) == 429);
+        } finally {
+            faulty.stop();
+        }
+
+        System.out.println("\n=== 测试完成 ===");
+    }
+
+    private static IoTDAClient newClient(String endpoint) {
+        return IoTDAClient.newBuilder()
+                .withCredential(new BasicCredentials().withAk("simulator").withSk("simulator").withProjectId("simulator"))
+                .withEndpoint(endpoint)
+                .build();
+    }
+
+    /**
+     * 执行请求并返回HTTP状态码，成功时返回200
+     */
+    private static int statusOf(Runnable request) {
+        try {
+            request.run();
+            return 200;
+        } catch (ServiceResponseException e) {
+            return e.getHttpStatusCode();
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println(name + ": " + (passed ? "通过 ✅" : "失败 ❌"));
+    }
+}
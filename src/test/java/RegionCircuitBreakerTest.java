@@ -0,0 +1,137 @@
+import org.example.service.RegionCircuitBreaker;
+import org.example.service.RegionUnavailableException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RegionCircuitBreaker测试类
+ * 验证窗口分桶计数、CAS状态切换（关闭→打开→半开→关闭/重新打开）以及半开探测超时
+ */
+public class RegionCircuitBreakerTest {
+
+    private static final String REGION = "cn-north-4";
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== 地域熔断器测试 ===");
+
+        testBucketCounters();
+        testStateMachine();
+        testHalfOpenTimeout();
+
+        System.out.println("\n=== 测试完成 ===");
+    }
+
+    /**
+     * 打包在一个long中的调用数、失败数和慢调用数分别累加，互不进位
+     */
+    private static void testBucketCounters() {
+        // 调用数门槛很高，只统计不打开
+        RegionCircuitBreaker breaker = new RegionCircuitBreaker(50, 80, 60_000, 1_000_000, 100_000, 1000, 1, 1000);
+        for (int i = 0; i < 30; i++) {
+            call(breaker, i % 3 == 0);
+        }
+        RegionCircuitBreaker.Metrics metrics = breaker.getMetrics().get(0);
+        check("窗口调用数", metrics.getCalls() == 30);
+        check("窗口失败率", metrics.getFailureRate() == 33);
+        check("窗口慢调用率", metrics.getSlowCallRate() == 0);
+
+        // 单桶计数达到16位上限后不再累加，也不会进位到相邻字段
+        for (int i = 0; i < 70_000; i++) {
+            call(breaker, false);
+        }
+        metrics = breaker.getMetrics().get(0);
+        // 70030次调用最多跨两个桶
+        check("单桶计数封顶", metrics.getCalls() >= 65_535 && metrics.getCalls() < 70_030);
+        check("计数不进位到失败数", metrics.getFailureRate() == 0);
+    }
+
+    /**
+     * 失败率超过阈值打开；打开时间到后半开放行探测，探测失败重新打开，探测全部成功关闭
+     */
+    private static void testStateMachine() throws InterruptedException {
+        RegionCircuitBreaker breaker = new RegionCircuitBreaker(50, 80, 60_000, 10, 10_000, 50, 2, 10_000);
+        for (int i = 0; i < 10; i++) {
+            call(breaker, true);
+        }
+        check("失败率超过阈值后打开", breaker.getState(REGION) == RegionCircuitBreaker.State.OPEN);
+        check("打开期间快速失败", isRejected(breaker));
+
+        TimeUnit.MILLISECONDS.sleep(60);
+        call(breaker, true);
+        check("探测失败后重新打开", breaker.getState(REGION) == RegionCircuitBreaker.State.OPEN);
+
+        TimeUnit.MILLISECONDS.sleep(60);
+        call(breaker, false);
+        check("首个探测成功后仍为半开", breaker.getState(REGION) == RegionCircuitBreaker.State.HALF_OPEN);
+        call(breaker, false);
+        check("探测全部成功后关闭", breaker.getState(REGION) == RegionCircuitBreaker.State.CLOSED);
+        check("关闭后窗口清空", breaker.getMetrics().get(0).getCalls() == 0);
+        check("累计打开次数", breaker.getMetrics().get(0).getOpenCount() == 2);
+    }
+
+    /**
+     * 探测请求一直不返回时，超过半开时限后重新打开，之后可以重新探测
+     */
+    private static void testHalfOpenTimeout() throws Exception {
+        RegionCircuitBreaker breaker = new RegionCircuitBreaker(50, 80, 60_000, 5, 10_000, 50, 1, 100);
+        for (int i = 0; i < 5; i++) {
+            call(breaker, true);
+        }
+        TimeUnit.MILLISECONDS.sleep(60);
+
+        CountDownLatch probing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread stuck = new Thread(() -> breaker.execute(REGION, () -> {
+            probing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        stuck.start();
+        probing.await(5, TimeUnit.SECONDS);
+        check("探测名额用完后拒绝", isRejected(breaker));
+
+        TimeUnit.MILLISECONDS.sleep(120);
+        check("探测超时后重新打开", isRejected(breaker)
+                && breaker.getState(REGION) == RegionCircuitBreaker.State.OPEN);
+
+        TimeUnit.MILLISECONDS.sleep(60);
+        call(breaker, false);
+        check("重新打开后可再次探测并关闭", breaker.getState(REGION) == RegionCircuitBreaker.State.CLOSED);
+
+        // 超时前放行的探测此时才返回，不影响当前状态
+        release.countDown();
+        stuck.join();
+        check("过期探测结果不参与判定", breaker.getState(REGION) == RegionCircuitBreaker.State.CLOSED);
+    }
+
+    private static void call(RegionCircuitBreaker breaker, boolean fail) {
+        try {
+            breaker.execute(REGION, () -> {
+                if (fail) {
+                    throw new IllegalStateException("模拟失败");
+                }
+                return null;
+            });
+        } catch (IllegalStateException | RegionUnavailableException e) {
+            // 预期的失败
+        }
+    }
+
+    private static boolean isRejected(RegionCircuitBreaker breaker) {
+        try {
+            breaker.execute(REGION, () -> null);
+            return false;
+        } catch (RegionUnavailableException e) {
+            return true;
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.println(name + ": " + (passed ? "通过 ✅" : "失败 ❌"));
+    }
+}